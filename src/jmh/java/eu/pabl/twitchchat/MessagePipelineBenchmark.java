@@ -0,0 +1,144 @@
+package eu.pabl.twitchchat;
+
+import eu.pabl.twitchchat.twitch_integration.Bot;
+import eu.pabl.twitchchat.twitch_integration.CalculateMinecraftColor;
+import eu.pabl.twitchchat.twitch_integration.ChatDeduplicator;
+import eu.pabl.twitchchat.twitch_integration.MessageEmotes;
+import eu.pabl.twitchchat.twitch_integration.TwitchMessage;
+import eu.pabl.twitchchat.twitch_integration.TwitchMessageTags;
+import eu.pabl.twitchchat.twitch_integration.UserColorCache;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how many messages per second each step between receiving a Twitch IRC line and adding it to the chat can
+ * handle. Run with `./gradlew jmh`, the gc profiler adds the bytes allocated per message (gc.alloc.rate.norm).
+ *
+ * The chat HUD is replaced by a Blackhole and emotes by their names, so no Minecraft client is needed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MessagePipelineBenchmark {
+  private static final int CHATTERS = 4096;
+  private static final long START_TIMESTAMP = 1700000000000L;
+
+  private String[] lines;
+  private String[] nicks;
+  private Bot bot;
+  private UserColorCache colorCache;
+  private ChatDeduplicator deduplicator;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp(Blackhole blackhole) {
+    lines = new String[CHATTERS];
+    nicks = new String[CHATTERS];
+    for (int i = 0; i < CHATTERS; i++) {
+      nicks[i] = "chatter_" + i;
+      String color = i % 3 == 0 ? "" : String.format("#%06X", (i * 0x9E3779) & 0xFFFFFF);
+      lines[i] = "@badge-info=;badges=" + (i % 7 == 0 ? "moderator/1" : "subscriber/3") + ";color=" + color
+          + ";display-name=" + nicks[i] + ";emotes=25:0-4;id=" + i + "-msg;tmi-sent-ts=" + (START_TIMESTAMP + i * 250L)
+          + " :" + nicks[i] + "!" + nicks[i] + "@" + nicks[i] + ".tmi.twitch.tv PRIVMSG #benchmark :Kappa message number "
+          + i + " in the benchmark";
+    }
+
+    bot = new Bot("benchmark", "oauth:benchmark", List.of("benchmark"));
+    colorCache = new UserColorCache(CHATTERS / 2, 0);
+    deduplicator = new ChatDeduplicator(1000);
+    TwitchChatMod.chatSink = new ChatSink() {
+      @Override
+      public void add(Text line) {
+        blackhole.consume(line);
+      }
+
+      @Override
+      public boolean replace(Text oldLine, Text newLine, boolean immediately) {
+        blackhole.consume(newLine);
+        return true;
+      }
+
+      @Override
+      public void flush() {
+      }
+    };
+    TwitchChatMod.emoteText = (emoteId, name) -> Text.literal(name);
+  }
+
+  private int nextIndex() {
+    next = (next + 1) & (CHATTERS - 1);
+    return next;
+  }
+
+  @Benchmark
+  public TwitchMessageTags parseTags() {
+    String line = lines[nextIndex()];
+    return TwitchMessageTags.parse(line.substring(1, line.indexOf(' ')));
+  }
+
+  @Benchmark
+  public TextColor defaultUserColor() {
+    return CalculateMinecraftColor.getDefaultUserColor(nicks[nextIndex()]);
+  }
+
+  @Benchmark
+  public int colorCacheResolve() {
+    int i = nextIndex();
+    return colorCache.resolve(nicks[i], i % 3 == 0 ? UserColorCache.NO_COLOR : i);
+  }
+
+  @Benchmark
+  public ChatDeduplicator.Entry deduplicate() {
+    int i = nextIndex();
+    // Half of the messages are the same emote wall.
+    return deduplicator.track("benchmark", i % 2 == 0 ? "Kappa Kappa Kappa" : lines[i], START_TIMESTAMP + i * 250L, 10_000);
+  }
+
+  @Benchmark
+  public String formatTimestamp() {
+    return TwitchChatMod.formatTMISentTimestamp(START_TIMESTAMP + nextIndex() * 250L);
+  }
+
+  @Benchmark
+  public Text buildText() {
+    int i = nextIndex();
+    return TwitchChatMod.addTwitchMessage(new TwitchMessage(START_TIMESTAMP + i * 250L, "benchmark", nicks[i],
+        "Kappa message in the benchmark", i, 0, null, MessageEmotes.NONE));
+  }
+
+  @Benchmark
+  public Text buildTextWithEmotes() {
+    String line = lines[nextIndex()];
+    int tagsEnd = line.indexOf(' ');
+    TwitchMessageTags tags = TwitchMessageTags.parse(line.substring(1, tagsEnd));
+    return TwitchChatMod.addTwitchMessage(new TwitchMessage(START_TIMESTAMP, "benchmark", "chatter",
+        "Kappa message in the benchmark", 0xFFFFFF, 0, tags.getId(), tags.getEmotes()));
+  }
+
+  /**
+   * A raw IRC line all the way to the (stubbed) chat HUD.
+   */
+  @Benchmark
+  public void endToEnd() {
+    String line = lines[nextIndex()];
+    int tagsEnd = line.indexOf(' ');
+    int nickEnd = line.indexOf('!', tagsEnd);
+    int messageStart = line.indexOf(" :", nickEnd) + 2;
+
+    // Like NioTransport, without copying the tags out of the line.
+    TwitchMessageTags tags = TwitchMessageTags.parse(line, 1, tagsEnd);
+    bot.handleChatMessage("benchmark", line.substring(tagsEnd + 2, nickEnd), line.substring(messageStart), tags, false);
+    TwitchChatMod.deliverQueuedMessages();
+  }
+}
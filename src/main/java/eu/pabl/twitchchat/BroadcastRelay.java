@@ -0,0 +1,133 @@
+package eu.pabl.twitchchat;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Relays Twitch messages to the server chat without getting kicked for spamming. Messages are merged into digests of
+ * "user: message | user: message" that are sent every few seconds, as long as the send budget for the server allows
+ * it. Each digest fits in one Minecraft chat message. Only used from the client thread.
+ */
+class BroadcastRelay {
+  // The server kicks players for longer chat messages.
+  static final int MAX_MESSAGE_LENGTH = 256;
+  private static final String SEPARATOR = " | ";
+  private static final String ELLIPSIS = "...";
+  // Past this, the oldest messages are skipped instead of being relayed minutes late.
+  private static final int MAX_PENDING = 100;
+
+  private final Consumer<String> sender;
+  private final ArrayDeque<String> pending = new ArrayDeque<>();
+  private final StringBuilder digest = new StringBuilder(MAX_MESSAGE_LENGTH);
+  private int skipped;
+  private long lastSend;
+  private double budget = -1;
+  private long lastRefill;
+
+  BroadcastRelay(Consumer<String> sender) {
+    this.sender = sender;
+  }
+
+  void add(String username, String message) {
+    if (pending.size() == MAX_PENDING) {
+      pending.poll();
+      skipped++;
+    }
+    pending.offer(username + ": " + message);
+  }
+
+  /**
+   * Sends the pending messages if it's time to and the budget allows it. Called every client tick.
+   * @param intervalMillis how long to wait between digests, to gather messages into them.
+   * @param messagesPerMinute how many chat messages can be sent to the server per minute.
+   */
+  void tick(long now, long intervalMillis, int messagesPerMinute, String prefix) {
+    // Starts full, and refills continuously up to a minute's worth of messages.
+    if (budget < 0) {
+      budget = messagesPerMinute;
+      lastRefill = now;
+    }
+    budget = Math.min(messagesPerMinute, budget + (now - lastRefill) * messagesPerMinute / 60_000.0);
+    lastRefill = now;
+
+    if (pending.isEmpty() || now - lastSend < intervalMillis || budget < 1) {
+      return;
+    }
+    budget -= 1;
+    lastSend = now;
+    sender.accept(nextDigest(prefix));
+  }
+
+  /**
+   * Forgets the pending messages and the budget, when leaving a server.
+   */
+  void clear() {
+    dropPending();
+    lastSend = 0;
+    budget = -1;
+  }
+
+  /**
+   * Forgets the pending messages but not the budget, when broadcasting is turned off.
+   */
+  void dropPending() {
+    pending.clear();
+    skipped = 0;
+  }
+
+  int getPendingCount() {
+    return pending.size();
+  }
+
+  private String nextDigest(String prefix) {
+    digest.setLength(0);
+    appendSanitised(digest, prefix);
+    if (skipped > 0) {
+      digest.append("(+").append(skipped).append(')').append(SEPARATOR);
+      skipped = 0;
+    }
+    int start = digest.length();
+
+    String line;
+    while ((line = pending.peek()) != null) {
+      int lineStart = digest.length();
+      if (lineStart > start) {
+        digest.append(SEPARATOR);
+      }
+      appendSanitised(digest, line);
+      if (digest.length() <= MAX_MESSAGE_LENGTH) {
+        pending.poll();
+        continue;
+      }
+      if (lineStart > start) {
+        // Doesn't fit, it goes first in the next digest.
+        digest.setLength(lineStart);
+      } else {
+        // Too long on its own.
+        pending.poll();
+        int end = MAX_MESSAGE_LENGTH - ELLIPSIS.length();
+        // Don't cut an emoji or other character outside the BMP in half.
+        if (Character.isHighSurrogate(digest.charAt(end - 1))) {
+          end--;
+        }
+        digest.setLength(end);
+        digest.append(ELLIPSIS);
+      }
+      break;
+    }
+    return digest.toString();
+  }
+
+  /**
+   * Appends the text without the characters the server doesn't allow in chat messages: formatting codes (§) and
+   * control characters.
+   */
+  static void appendSanitised(StringBuilder builder, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c != '§' && c >= ' ' && c != 127) {
+        builder.append(c);
+      }
+    }
+  }
+}
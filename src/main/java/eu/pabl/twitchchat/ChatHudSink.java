@@ -0,0 +1,60 @@
+package eu.pabl.twitchchat;
+
+import eu.pabl.twitchchat.emotes.Emotes;
+import eu.pabl.twitchchat.mixin.ChatHudAccessor;
+import java.util.List;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+import net.minecraft.text.Text;
+
+/**
+ * Adds lines to Minecraft's chat. The chat can only re-wrap all of its lines at once, so replaced lines are re-wrapped
+ * together, at most once a second unless a change can't wait.
+ */
+class ChatHudSink implements ChatSink {
+  private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+  private boolean refreshNeeded;
+  private boolean refreshNow;
+  private long lastRefresh;
+
+  @Override
+  public void add(Text line) {
+    chatHud().addMessage(line);
+    Emotes.lineAdded();
+  }
+
+  @Override
+  public boolean replace(Text oldLine, Text newLine, boolean immediately) {
+    MinecraftClient client = MinecraftClient.getInstance();
+    List<ChatHudLine> messages = ((ChatHudAccessor) chatHud()).twitchchat$getMessages();
+    for (int i = 0; i < messages.size(); i++) {
+      ChatHudLine message = messages.get(i);
+      // The chat keeps the exact Text we gave it.
+      if (message.content() == oldLine) {
+        // A new creation tick brings the line back if it had already faded out.
+        messages.set(i, new ChatHudLine(client.inGameHud.getTicks(), newLine, message.signature(), message.indicator()));
+        refreshNeeded = true;
+        refreshNow |= immediately;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void flush() {
+    long now = System.currentTimeMillis();
+    if (refreshNeeded && (refreshNow || now - lastRefresh >= REFRESH_INTERVAL_MILLIS)) {
+      refreshNeeded = false;
+      refreshNow = false;
+      lastRefresh = now;
+      ((ChatHudAccessor) chatHud()).twitchchat$refresh();
+    }
+  }
+
+  private static ChatHud chatHud() {
+    return MinecraftClient.getInstance().inGameHud.getChatHud();
+  }
+}
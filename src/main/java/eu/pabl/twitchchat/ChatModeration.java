@@ -0,0 +1,196 @@
+package eu.pabl.twitchchat;
+
+import eu.pabl.twitchchat.twitch_integration.TwitchMessage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import net.minecraft.text.Text;
+
+/**
+ * Takes deleted messages, timeouts and bans back out of the chat.
+ *
+ * The chat lines of the latest messages are indexed by message id and by chatter, so a CLEARMSG or CLEARCHAT finds
+ * its lines directly. Messages that are still waiting in the queue when they are cleared are caught by
+ * {@link #isCleared} instead, before they're ever shown. Only used from the client thread.
+ */
+class ChatModeration {
+  // More than the chat HUD keeps, older lines have scrolled out of it anyway.
+  private static final int MAX_TRACKED_LINES = 200;
+  private static final int MAX_DELETED_IDS = 1000;
+
+  private static class TrackedLine {
+    private final String id;
+    private final String chatter;
+    // What the chat shows right now, which changes when repeats are collapsed into it.
+    private Text line;
+
+    TrackedLine(String id, String chatter, Text line) {
+      this.id = id;
+      this.chatter = chatter;
+      this.line = line;
+    }
+  }
+
+  private final Supplier<ChatSink> chatSink;
+  private final UnaryOperator<Text> retract;
+  // Oldest first, every line is in byId (if it has an id) and in its chatter's deque.
+  private final ArrayDeque<TrackedLine> lines = new ArrayDeque<>();
+  private final Map<String, TrackedLine> byId = new HashMap<>();
+  private final Map<String, ArrayDeque<TrackedLine>> byChatter = new HashMap<>();
+  // The chat keeps the exact Text it was given, so lines are found by identity.
+  private final Map<Text, TrackedLine> byLine = new IdentityHashMap<>();
+  // For the messages that haven't been shown yet.
+  private final Set<String> deletedIds = new LinkedHashSet<>();
+  private final Map<String, Long> clearedAt = new LinkedHashMap<>();
+
+  /**
+   * @param chatSink where the lines are, looked up every time since the benchmarks swap it.
+   * @param retract turns a line into what's shown instead of it once it has been cleared.
+   */
+  ChatModeration(Supplier<ChatSink> chatSink, UnaryOperator<Text> retract) {
+    this.chatSink = chatSink;
+    this.retract = retract;
+  }
+
+  void track(TwitchMessage message, Text line) {
+    String id = message.id();
+    TrackedLine tracked = new TrackedLine(id, chatter(message.channel(), message.username()), line);
+    lines.addLast(tracked);
+    if (id != null) {
+      byId.put(id, tracked);
+    }
+    byChatter.computeIfAbsent(tracked.chatter, c -> new ArrayDeque<>()).addLast(tracked);
+    byLine.put(line, tracked);
+
+    if (lines.size() > MAX_TRACKED_LINES) {
+      TrackedLine oldest = lines.removeFirst();
+      forget(oldest);
+    }
+  }
+
+  /**
+   * Replaces a line in the chat, like {@link ChatSink#replace}, and keeps tracking it if it's a tracked one.
+   */
+  boolean replace(Text oldLine, Text newLine, boolean immediately) {
+    if (!chatSink.get().replace(oldLine, newLine, immediately)) {
+      return false;
+    }
+    TrackedLine tracked = byLine.remove(oldLine);
+    if (tracked != null) {
+      tracked.line = newLine;
+      byLine.put(newLine, tracked);
+    }
+    return true;
+  }
+
+  /**
+   * Whether a message was cleared before it could be shown.
+   */
+  boolean isCleared(TwitchMessage message) {
+    String id = message.id();
+    if (id != null && deletedIds.contains(id)) {
+      return true;
+    }
+    Long chatterClearedAt = clearedAt.get(chatter(message.channel(), message.username()));
+    Long channelClearedAt = clearedAt.get(chatter(message.channel(), null));
+    return (chatterClearedAt != null && message.timestamp() <= chatterClearedAt)
+        || (channelClearedAt != null && message.timestamp() <= channelClearedAt);
+  }
+
+  /**
+   * A single message was deleted (CLEARMSG).
+   */
+  void deleteMessage(String id) {
+    deletedIds.add(id);
+    trim(deletedIds);
+    TrackedLine tracked = byId.get(id);
+    if (tracked != null) {
+      retract(tracked);
+      lines.remove(tracked);
+      forget(tracked);
+    }
+  }
+
+  /**
+   * Every message of a chatter was cleared by a timeout or a ban (CLEARCHAT with a user), or every message of the
+   * channel if the chatter is null.
+   * @param timestamp when it happened, messages sent after that aren't affected.
+   */
+  void clear(String channel, String chatter, long timestamp) {
+    clearedAt.put(chatter(channel, chatter), timestamp);
+    trim(clearedAt.keySet());
+
+    if (chatter != null) {
+      ArrayDeque<TrackedLine> chatterLines = byChatter.remove(chatter(channel, chatter));
+      if (chatterLines != null) {
+        for (TrackedLine tracked : chatterLines) {
+          retract(tracked);
+          lines.remove(tracked);
+          byLine.remove(tracked.line);
+          if (tracked.id != null) {
+            byId.remove(tracked.id);
+          }
+        }
+      }
+    } else {
+      String prefix = chatter(channel, "");
+      Iterator<TrackedLine> iterator = lines.iterator();
+      while (iterator.hasNext()) {
+        TrackedLine tracked = iterator.next();
+        if (tracked.chatter.startsWith(prefix)) {
+          retract(tracked);
+          iterator.remove();
+          forget(tracked);
+        }
+      }
+    }
+  }
+
+  void reset() {
+    lines.clear();
+    byId.clear();
+    byChatter.clear();
+    byLine.clear();
+    deletedIds.clear();
+    clearedAt.clear();
+  }
+
+  private void retract(TrackedLine tracked) {
+    // Does nothing if the line has already scrolled out of the chat.
+    // Cleared messages are taken out right away.
+    chatSink.get().replace(tracked.line, retract.apply(tracked.line), true);
+  }
+
+  private void forget(TrackedLine tracked) {
+    byLine.remove(tracked.line);
+    if (tracked.id != null) {
+      byId.remove(tracked.id);
+    }
+    ArrayDeque<TrackedLine> chatterLines = byChatter.get(tracked.chatter);
+    if (chatterLines != null) {
+      chatterLines.remove(tracked);
+      if (chatterLines.isEmpty()) {
+        byChatter.remove(tracked.chatter);
+      }
+    }
+  }
+
+  private static void trim(Set<String> oldestFirst) {
+    Iterator<String> iterator = oldestFirst.iterator();
+    while (oldestFirst.size() > MAX_DELETED_IDS) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private static String chatter(String channel, String username) {
+    return username == null ? channel + "#" : channel + "#" + username;
+  }
+}
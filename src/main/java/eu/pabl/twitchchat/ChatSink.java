@@ -0,0 +1,23 @@
+package eu.pabl.twitchchat;
+
+import net.minecraft.text.Text;
+
+/**
+ * Where finished chat lines go. Only replaced by the benchmarks, which run without a Minecraft client.
+ */
+interface ChatSink {
+  void add(Text line);
+
+  /**
+   * Replaces a line that was added before, keeping its place in the chat.
+   * @param immediately whether the change has to show on this tick, otherwise it can wait for up to a second so that
+   *     frequent changes (like repeat counters) don't re-wrap the chat on every tick.
+   * @return false if the line isn't in the chat anymore.
+   */
+  boolean replace(Text oldLine, Text newLine, boolean immediately);
+
+  /**
+   * Called once per tick, after every line of the tick has been added or replaced.
+   */
+  void flush();
+}
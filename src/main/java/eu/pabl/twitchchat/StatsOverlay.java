@@ -0,0 +1,43 @@
+package eu.pabl.twitchchat;
+
+import eu.pabl.twitchchat.config.ModConfig;
+import eu.pabl.twitchchat.twitch_integration.TwitchMetrics;
+import java.util.List;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.RenderTickCounter;
+import net.minecraft.text.Text;
+
+/**
+ * Shows the same numbers as /twitch stats in the top right corner of the screen, F3 style.
+ */
+public class StatsOverlay {
+  private static final int PADDING = 2;
+  private static final int BACKGROUND_COLOR = 0x90505050;
+  private static final int TEXT_COLOR = 0xE0E0E0;
+
+  // The lines are only rebuilt once a second, when the metrics are sampled, not on every frame.
+  private static List<Text> lines = List.of();
+
+  static void refresh() {
+    lines = ModConfig.getConfig().isStatsOverlayEnabled() ? TwitchMetrics.describe() : List.of();
+  }
+
+  static void render(DrawContext context, RenderTickCounter tickCounter) {
+    MinecraftClient client = MinecraftClient.getInstance();
+    if (lines.isEmpty() || !ModConfig.getConfig().isStatsOverlayEnabled() || client.getDebugHud().shouldShowDebugHud()) {
+      return;
+    }
+
+    TextRenderer textRenderer = client.textRenderer;
+    int y = PADDING;
+    for (Text line : lines) {
+      int width = textRenderer.getWidth(line);
+      int x = context.getScaledWindowWidth() - width - PADDING;
+      context.fill(x - 1, y - 1, x + width + 1, y + textRenderer.fontHeight, BACKGROUND_COLOR);
+      context.drawText(textRenderer, line, x, y, TEXT_COLOR, false);
+      y += textRenderer.fontHeight + 1;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package eu.pabl.twitchchat;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Renders message timestamps using the date format from the config.
+ *
+ * The config stores a {@link java.text.SimpleDateFormat} pattern, which is translated and compiled into a
+ * {@link DateTimeFormatter} only when it changes. Most patterns (like the default "[H:mm] ") don't show seconds, so
+ * the last rendered text is reused until the minute (or second) changes.
+ */
+public class TimestampFormatter {
+  private static final long NO_CACHE = 0;
+
+  private record Compiled(String pattern, DateTimeFormatter formatter, long granularity) {}
+  private record Rendered(Compiled compiled, long bucket, String text) {}
+
+  private final String fallbackPattern;
+  private volatile Compiled compiled;
+  private volatile Rendered lastRendered;
+
+  public TimestampFormatter(String fallbackPattern) {
+    this.fallbackPattern = fallbackPattern;
+  }
+
+  public String format(String pattern, long epochMillis) {
+    Compiled compiled = compile(pattern);
+    if (compiled.granularity() == NO_CACHE) {
+      return compiled.formatter().format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    long bucket = Math.floorDiv(epochMillis, compiled.granularity());
+    Rendered rendered = lastRendered;
+    if (rendered == null || rendered.compiled() != compiled || rendered.bucket() != bucket) {
+      rendered = new Rendered(compiled, bucket, compiled.formatter().format(Instant.ofEpochMilli(epochMillis)));
+      lastRendered = rendered;
+    }
+    return rendered.text();
+  }
+
+  private Compiled compile(String pattern) {
+    Compiled current = compiled;
+    if (current != null && current.pattern().equals(pattern)) {
+      return current;
+    }
+
+    DateTimeFormatter formatter;
+    long granularity;
+    try {
+      formatter = DateTimeFormatter.ofPattern(translatePattern(pattern)).withZone(ZoneId.systemDefault());
+      granularity = granularityOf(pattern);
+    } catch (IllegalArgumentException e) {
+      System.err.println("TWITCH CHAT INVALID DATE FORMAT '" + pattern + "': " + e.getMessage());
+      formatter = DateTimeFormatter.ofPattern(translatePattern(fallbackPattern)).withZone(ZoneId.systemDefault());
+      granularity = granularityOf(fallbackPattern);
+    }
+    current = new Compiled(pattern, formatter, granularity);
+    compiled = current;
+    return current;
+  }
+
+  /**
+   * SimpleDateFormat and DateTimeFormatter patterns are almost the same, but DateTimeFormatter reserves some symbols
+   * that SimpleDateFormat prints as they are (the brackets in "[H:mm] " would become an optional section).
+   */
+  static String translatePattern(String pattern) {
+    StringBuilder builder = new StringBuilder(pattern.length() + 8);
+    boolean quoted = false;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+        builder.append(c);
+      } else if (quoted) {
+        builder.append(c);
+      } else if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+        builder.append('\'').append(c).append('\'');
+      } else if (c == 'u') {
+        // 'u' is the day number of the week in SimpleDateFormat, but the year in DateTimeFormatter.
+        builder.append('e');
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return how long a rendered timestamp stays the same, in milliseconds, or {@link #NO_CACHE} if it can change
+   * every millisecond.
+   */
+  static long granularityOf(String pattern) {
+    long granularity = 60_000;
+    boolean quoted = false;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted) {
+        if (c == 'S' || c == 'n' || c == 'N' || c == 'A') {
+          return NO_CACHE;
+        } else if (c == 's') {
+          granularity = 1_000;
+        }
+      }
+    }
+    return granularity;
+  }
+}
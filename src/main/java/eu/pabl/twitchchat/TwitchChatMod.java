@@ -2,42 +2,271 @@ package eu.pabl.twitchchat;
 
 import eu.pabl.twitchchat.commands.TwitchBaseCommand;
 import eu.pabl.twitchchat.config.ModConfig;
+import eu.pabl.twitchchat.emotes.Emotes;
 import eu.pabl.twitchchat.twitch_integration.Bot;
-import java.text.SimpleDateFormat;
+import eu.pabl.twitchchat.twitch_integration.CalculateMinecraftColor;
+import eu.pabl.twitchchat.twitch_integration.ChatDeduplicator;
+import eu.pabl.twitchchat.twitch_integration.ChatMessageQueue;
+import eu.pabl.twitchchat.twitch_integration.MessageEmotes;
+import eu.pabl.twitchchat.twitch_integration.TwitchEvent;
+import eu.pabl.twitchchat.twitch_integration.TwitchMessage;
+import eu.pabl.twitchchat.twitch_integration.UserColorCache;
+import eu.pabl.twitchchat.twitch_integration.TwitchMetrics;
 import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.client.toast.SystemToast;
 import net.minecraft.text.Text;
 import net.minecraft.text.MutableText;
+import net.minecraft.text.Style;
 import net.minecraft.text.TextColor;
 import net.minecraft.util.Formatting;
 
 public class TwitchChatMod implements ModInitializer {
   public static Bot bot;
+  private static final ChatMessageQueue messageQueue = new ChatMessageQueue();
+  // Subs, raids and cheers skip the message queue, so they're never dropped or held back behind regular chat.
+  private static final ConcurrentLinkedQueue<TwitchEvent> eventQueue = new ConcurrentLinkedQueue<>();
+  private static final TimestampFormatter timestampFormatter = new TimestampFormatter(ModConfig.DEFAULT_DATE_FORMAT);
+  private static final int DEDUPLICATOR_MAX_ENTRIES = 1000;
+  private static final ChatDeduplicator deduplicator = new ChatDeduplicator(DEDUPLICATOR_MAX_ENTRIES);
+  static ChatSink chatSink = new ChatHudSink();
+  // (emote id, emote name) to the text shown for the emote, or null to keep its name.
+  static BiFunction<String, String, Text> emoteText = Emotes::text;
+  private static final ChatModeration moderation = new ChatModeration(() -> chatSink, TwitchChatMod::retractedLine);
+  private static final BroadcastRelay broadcastRelay = new BroadcastRelay(message -> {
+    ClientPlayNetworkHandler networkHandler = MinecraftClient.getInstance().getNetworkHandler();
+    if (networkHandler != null) {
+      networkHandler.sendChatMessage(message);
+    }
+  });
 
   @Override
   public void onInitialize() {
-    ModConfig.getConfig().load();
+    ModConfig.load();
+    ModConfig.watchForChanges(() -> addNotification(Text.translatable("text.twitchchat.config.reloaded")));
 
     // Register commands
     ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) ->
         new TwitchBaseCommand().registerCommands(dispatcher));
+
+    // Twitch messages are received on the IRC thread, but they can only be added to the chat from the client thread.
+    ClientTickEvents.END_CLIENT_TICK.register(client -> {
+      deliverQueuedMessages();
+      ModConfig config = ModConfig.getConfig();
+      if (config.isBroadcastEnabled()) {
+        broadcastRelay.tick(System.currentTimeMillis(), config.getBroadcastIntervalSeconds() * 1000L,
+            config.getBroadcastMessagesPerMinute(), config.getBroadcastPrefix());
+      } else {
+        // What was waiting when broadcasting was turned off isn't sent as the player anymore.
+        broadcastRelay.dropPending();
+      }
+      Emotes.tick();
+      if (TwitchMetrics.tick(System.currentTimeMillis())) {
+        StatsOverlay.refresh();
+      }
+    });
+    HudRenderCallback.EVENT.register(StatsOverlay::render);
+    // The send budget is per server.
+    ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> broadcastRelay.clear());
+  }
+
+  /**
+   * Queues a message to be shown in the chat on one of the next client ticks. Safe to call from any thread.
+   */
+  public static void queueTwitchMessage(TwitchMessage message) {
+    ModConfig config = ModConfig.getConfig();
+    messageQueue.offer(message, config.getQueueCapacity(), config.getOverflowPolicy());
+  }
+
+  /**
+   * Queues a sub, raid or cheer to be shown on the next client tick. Safe to call from any thread.
+   */
+  public static void queueTwitchEvent(TwitchEvent event) {
+    eventQueue.offer(event);
+  }
+
+  static void deliverQueuedMessages() {
+    TwitchEvent event;
+    while ((event = eventQueue.poll()) != null) {
+      // Gifts from the same chatter that arrived together are shown as one line.
+      TwitchEvent next;
+      while ((next = eventQueue.peek()) != null && event.isSameGifter(next)) {
+        event = event.plusGift(eventQueue.poll());
+      }
+      deliverEvent(event);
+    }
+
+    int coalesced = messageQueue.drain(ModConfig.getConfig().getMessagesPerTick(), TwitchChatMod::deliverMessage);
+    if (coalesced > 0) {
+      addNotification(Text.translatable("text.twitchchat.queue.coalesced", coalesced));
+    }
+    chatSink.flush();
+  }
+
+  private static void deliverMessage(TwitchMessage message) {
+    if (moderation.isCleared(message)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long dedupWindowMillis = ModConfig.getConfig().getDedupWindowSeconds() * 1000L;
+    ChatDeduplicator.Entry repeat = null;
+    if (dedupWindowMillis > 0) {
+      repeat = deduplicator.track(message.channel(), message.message(), now, dedupWindowMillis);
+      if (repeat.getCount() > 1) {
+        if (repeat.getLine() != null) {
+          // Collapse the repeat into the line that's already in the chat.
+          Text counted = Text.empty()
+              .append(repeat.getLine())
+              .append(Text.literal(" x" + repeat.getCount()).formatted(Formatting.GRAY));
+          // Through the moderation, so that clearing the message takes out the line with its counter. The counter can
+          // lag behind for up to a second, re-wrapping the whole chat for every repeat would cost more than new lines.
+          if (moderation.replace(repeat.getShownLine(), counted, false)) {
+            repeat.setLine(repeat.getLine(), counted);
+            TwitchMetrics.messageCollapsed(message.timestamp(), now);
+            return;
+          }
+        }
+        // The line has scrolled out of the chat (or was broadcast), start over with a new one.
+        repeat.restart();
+      }
+    }
+
+    Text line = addTwitchMessage(message);
+    TwitchMetrics.messageDelivered(message.timestamp(), now);
+    if (line != null) {
+      moderation.track(message, line);
+    }
+    if (repeat != null) {
+      repeat.setLine(line, line);
+    }
+  }
+
+  /**
+   * Shows an event in the chat, even when broadcasting, and as an alert if enabled.
+   */
+  private static void deliverEvent(TwitchEvent event) {
+    Text headline = eventHeadline(event);
+    MutableText line = prefix(event.timestamp(), event.channel())
+        .append(Text.empty().append(headline).formatted(Formatting.LIGHT_PURPLE));
+    if (event.message() != null) {
+      line.append(Text.literal(" ")).append(withEmotes(event.message(), event.tags().getEmotes()));
+    }
+    chatSink.add(line);
+
+    MinecraftClient client = MinecraftClient.getInstance();
+    Text message = event.message() != null ? Text.literal(event.message()) : null;
+    switch (ModConfig.getConfig().getEventAlertStyle()) {
+      case TOAST -> SystemToast.show(client.getToastManager(), SystemToast.Type.PERIODIC_NOTIFICATION, headline, message);
+      case TITLE -> {
+        client.inGameHud.setTitle(Text.empty().append(headline).formatted(Formatting.LIGHT_PURPLE));
+        client.inGameHud.setSubtitle(message != null ? message : Text.empty());
+      }
+      case NONE -> {
+      }
+    }
+  }
+
+  private static Text eventHeadline(TwitchEvent event) {
+    Text user = event.user() != null
+        ? Text.literal(event.user()).formatted(Formatting.BOLD)
+        : Text.translatable("text.twitchchat.event.anonymous");
+    return switch (event.type()) {
+      case SUB -> Text.translatable("text.twitchchat.event.sub", user);
+      case RESUB -> Text.translatable("text.twitchchat.event.resub", user, event.count());
+      case GIFT -> event.count() == 1 && event.recipient() != null
+          ? Text.translatable("text.twitchchat.event.gift", user, event.recipient())
+          : Text.translatable("text.twitchchat.event.gift_many", user, event.count());
+      case GIFT_BOMB -> Text.translatable("text.twitchchat.event.gift_bomb", user, event.count());
+      case RAID -> Text.translatable("text.twitchchat.event.raid", user, event.count());
+      case CHEER -> Text.translatable("text.twitchchat.event.cheer", user, event.count());
+      case OTHER -> Text.literal(event.systemMessage() != null ? event.systemMessage() : "");
+    };
+  }
+
+  /**
+   * Takes a deleted message (CLEARMSG) out of the chat. Safe to call from any thread.
+   */
+  public static void deleteMessage(String messageId) {
+    MinecraftClient.getInstance().execute(() -> moderation.deleteMessage(messageId));
+  }
+
+  /**
+   * Takes the messages of a chatter that was timed out or banned (CLEARCHAT) out of the chat, or every message of the
+   * channel if the chatter is null. Safe to call from any thread.
+   */
+  public static void clearChat(String channel, String username, long timestamp) {
+    MinecraftClient.getInstance().execute(() -> moderation.clear(channel, username, timestamp));
   }
 
-  public static void addTwitchMessage(String time, String username, String message, TextColor textColor, boolean isMeMessage) {
-    MutableText timestampText = Text.literal(time);
-    MutableText usernameText = Text.literal(username).styled(style -> style.withColor(textColor));
+  /**
+   * Forgets the messages the moderation knows about, when the bot is stopped. Only called from the client thread.
+   */
+  public static void resetModeration() {
+    moderation.reset();
+  }
+
+  private static Text retractedLine(Text line) {
+    if (ModConfig.getConfig().isHideDeletedMessages()) {
+      return Text.translatable("text.twitchchat.moderation.deleted").formatted(Formatting.DARK_GRAY, Formatting.ITALIC);
+    }
+    return Text.empty().append(line).formatted(Formatting.STRIKETHROUGH, Formatting.DARK_GRAY);
+  }
+
+  public static int getQueuedMessageCount() {
+    return messageQueue.size();
+  }
+
+  /**
+   * Shows a message in the chat, or sends it to the server instead when broadcasting is enabled.
+   * @return the line added to the chat, or null if the message was broadcast instead.
+   */
+  public static Text addTwitchMessage(TwitchMessage message) {
+    if (ModConfig.getConfig().isBroadcastEnabled()) {
+      if (MinecraftClient.getInstance().getNetworkHandler() != null) {
+        broadcastRelay.add(message.username(), message.message());
+      }
+      return null;
+    }
+
+    Text line = toText(message);
+    chatSink.add(line);
+    return line;
+  }
+
+  /**
+   * The chat line of a message, only built the first time it's needed.
+   */
+  public static Text toText(TwitchMessage message) {
+    Text line = message.getText();
+    if (line == null) {
+      line = buildText(message);
+      message.setText(line);
+    }
+    return line;
+  }
+
+  private static Text buildText(TwitchMessage message) {
+    MutableText timestampText = prefix(message.timestamp(), message.channel());
+    Style userStyle = Style.EMPTY.withColor(resolveColor(message.username(), message.color()));
+    MutableText usernameText = Text.literal(message.username()).setStyle(userStyle);
     MutableText messageBodyText;
 
-    if (!isMeMessage) {
-      messageBodyText = Text.literal(": " + message);
+    if (!message.isMeMessage()) {
+      messageBodyText = Text.literal(": ").append(withEmotes(message.message(), message.emotes()));
     } else {
       // '/me' messages have the same color as the username in the Twitch website.
       // And thus I set the color of the message to be the same as the username.
       // They also don't have a colon after the username.
-      messageBodyText = Text.literal(" " + message).styled(style -> style.withColor(textColor));
+      messageBodyText = Text.literal(" ").append(withEmotes(message.message(), message.emotes())).setStyle(userStyle);
 
       // In Minecraft, a '/me' message is marked with a star before the name, like so:
       //
@@ -47,42 +276,92 @@ public class TwitchChatMod implements ModInitializer {
       // The star is always white (that's why I don't format it).
       usernameText = Text.literal("* ").append(usernameText);
     }
+    if (message.isHighlighted()) {
+      messageBodyText.formatted(Formatting.GOLD);
+    }
 
-    if (ModConfig.getConfig().isBroadcastEnabled()) {
-      try {
-        String plainTextMessage = ModConfig.getConfig().getBroadcastPrefix() + username + ": " + message;
-        plainTextMessage = sanitiseMessage(plainTextMessage);
-        if (MinecraftClient.getInstance().player != null) {
-          MinecraftClient.getInstance().player.sendMessage(Text.literal(plainTextMessage), false);
-        }
-      } catch (NullPointerException e) {
-        System.err.println("TWITCH BOT FAILED TO BROADCAST MESSAGE: " + e.getMessage());
-      }
-    } else {
-      MinecraftClient.getInstance().inGameHud.getChatHud().addMessage(
-          timestampText
-          .append(usernameText)
-          .append(messageBodyText));
+    return timestampText
+        .append(usernameText)
+        .append(messageBodyText);
+  }
+
+  /**
+   * The timestamp, and the channel when watching more than one.
+   */
+  private static MutableText prefix(long timestamp, String channel) {
+    MutableText prefix = Text.literal(formatTMISentTimestamp(timestamp));
+    if (channel != null && bot != null && bot.getChannels().size() > 1) {
+      prefix.append(Text.literal("[" + channel + "] ")
+          .setStyle(Style.EMPTY.withColor(CalculateMinecraftColor.getDefaultUserColor(channel))));
     }
+    return prefix;
   }
 
-  private static String sanitiseMessage(String message) {
-    return message.replaceAll("§", "");
+  private static TextColor resolveColor(String username, int color) {
+    if (bot != null) {
+      return TextColor.fromRgb(bot.getUserColorCache().resolve(username, color));
+    }
+    return color != UserColorCache.NO_COLOR ? TextColor.fromRgb(color) : CalculateMinecraftColor.getDefaultUserColor(username);
+  }
+
+  /**
+   * Replaces the emotes of the message with their images. Emote positions are code point indices in the message.
+   */
+  private static MutableText withEmotes(String message, MessageEmotes emotes) {
+    if (emotes.getCount() == 0) {
+      return Text.literal(message);
+    }
+    MutableText text = Text.empty();
+    int codePointIndex = 0;
+    int charIndex = 0;
+    int textStart = 0;
+    for (int n = 0; n < emotes.getCount(); n++) {
+      int start = emotes.getStart(n);
+      int end = emotes.getEnd(n);
+      if (start < codePointIndex) {
+        continue; // Overlaps the previous emote.
+      }
+      while (codePointIndex < start && charIndex < message.length()) {
+        charIndex += Character.charCount(message.codePointAt(charIndex));
+        codePointIndex++;
+      }
+      int emoteStart = charIndex;
+      while (codePointIndex <= end && charIndex < message.length()) {
+        charIndex += Character.charCount(message.codePointAt(charIndex));
+        codePointIndex++;
+      }
+      if (emoteStart == charIndex) {
+        break; // Past the end of the message.
+      }
+
+      Text emote = emoteText.apply(emotes.getId(n), message.substring(emoteStart, charIndex));
+      if (emote != null) {
+        if (emoteStart > textStart) {
+          text.append(message.substring(textStart, emoteStart));
+        }
+        text.append(emote);
+        textStart = charIndex;
+      }
+    }
+    if (textStart < message.length()) {
+      text.append(message.substring(textStart));
+    }
+    return text;
   }
 
   public static void addNotification(MutableText message) {
-    MinecraftClient.getInstance().inGameHud.getChatHud().addMessage(message.formatted(Formatting.DARK_GRAY));
+    // Notifications also come from the IRC thread, so make sure the chat is only touched from the client thread.
+    MinecraftClient client = MinecraftClient.getInstance();
+    client.execute(() -> client.inGameHud.getChatHud().addMessage(message.formatted(Formatting.DARK_GRAY)));
   }
 
   public static String formatTMISentTimestamp(String tmiSentTS) {
     return formatTMISentTimestamp(Long.parseLong(tmiSentTS));
   }
   public static String formatTMISentTimestamp(long tmiSentTS) {
-    Date date = new Date(tmiSentTS);
-    return formatDateTwitch(date);
+    return timestampFormatter.format(ModConfig.getConfig().getDateFormat(), tmiSentTS);
   }
   public static String formatDateTwitch(Date date) {
-    SimpleDateFormat sf = new SimpleDateFormat(ModConfig.getConfig().getDateFormat());
-    return sf.format(date);
+    return formatTMISentTimestamp(date.getTime());
   }
 }
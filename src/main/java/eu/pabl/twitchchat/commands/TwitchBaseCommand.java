@@ -15,6 +15,9 @@ public class TwitchBaseCommand implements BaseCommand {
           .then(new TwitchDisableCommand().getArgumentBuilder())
           .then(new TwitchWatchCommand().getArgumentBuilder())
           .then(new TwitchBroadcastCommand().getArgumentBuilder())
+          .then(new TwitchStatsCommand().getArgumentBuilder())
+          .then(new TwitchHistoryCommand().getArgumentBuilder())
+          .then(new TwitchSearchCommand().getArgumentBuilder())
           .executes(source -> {
               source.getSource().sendFeedback(Text.translatable("text.twitchchat.command.base.noargs1"));
               source.getSource().sendFeedback(Text.translatable("text.twitchchat.command.base.noargs2"));
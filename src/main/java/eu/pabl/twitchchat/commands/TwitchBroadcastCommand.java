@@ -18,14 +18,14 @@ public class TwitchBroadcastCommand implements SubCommand {
             .executes(ctx -> {
               boolean enabled = BoolArgumentType.getBool(ctx, "enabled");
 
-              ModConfig.getConfig().setBroadcastEnabled(enabled);
+              ModConfig.setBroadcastEnabled(enabled);
               // Also switch channels if the bot has been initialized
               if (enabled) {
                 ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.broadcast.enabled"));
               } else {
                 ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.broadcast.disabled"));
               }
-              ModConfig.getConfig().save();
+              ModConfig.save();
               return 1;
         }));
   }
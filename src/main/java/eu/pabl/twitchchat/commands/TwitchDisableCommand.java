@@ -2,6 +2,7 @@ package eu.pabl.twitchchat.commands;
 
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import eu.pabl.twitchchat.TwitchChatMod;
+import eu.pabl.twitchchat.twitch_integration.ConnectionState;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.minecraft.text.Text;
@@ -13,12 +14,14 @@ public class TwitchDisableCommand implements SubCommand {
         // The command to be executed if the command "twitch" is entered with the argument "disable"
         // It shuts down the irc bot.
         .executes(ctx -> {
-          if (TwitchChatMod.bot == null || !TwitchChatMod.bot.isConnected()) {
+          // A bot that is waiting to reconnect isn't connected, but it still has to be stopped.
+          if (TwitchChatMod.bot == null || TwitchChatMod.bot.getState() == ConnectionState.STOPPED) {
             ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.disable.already_disabled"));
             return 1;
           }
 
           TwitchChatMod.bot.stop();
+          TwitchChatMod.resetModeration();
           ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.disable.disabled").formatted(
               Formatting.DARK_GRAY));
 
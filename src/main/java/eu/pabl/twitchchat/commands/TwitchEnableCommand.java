@@ -17,9 +17,22 @@ public class TwitchEnableCommand implements SubCommand {
         .executes(ctx -> {
           ModConfig config = ModConfig.getConfig();
 
-          if (TwitchChatMod.bot != null && TwitchChatMod.bot.isConnected()) {
-            ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.enable.already_enabled"));
-            return 1;
+          if (TwitchChatMod.bot != null) {
+            switch (TwitchChatMod.bot.getState()) {
+              case CONNECTING, CONNECTED -> {
+                ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.enable.already_enabled"));
+                return 1;
+              }
+              case RECONNECTING -> {
+                ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.enable.reconnecting"));
+                return 1;
+              }
+              case STOPPED -> {
+                // Start a new bot below, the old one may have stopped by itself and still have its threads.
+                TwitchChatMod.bot.stop();
+                TwitchChatMod.resetModeration();
+              }
+            }
           }
 
           if (config.getUsername().equals("") || config.getOauthKey().equals("")) {
@@ -27,11 +40,11 @@ public class TwitchEnableCommand implements SubCommand {
             return -1;
           }
 
-          if (config.getChannel().equals("")) {
+          if (config.getChannels().isEmpty()) {
             ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.enable.select_channel"));
           }
 
-          TwitchChatMod.bot = new Bot(config.getUsername(), config.getOauthKey(), config.getChannel());
+          TwitchChatMod.bot = new Bot(config.getUsername(), config.getOauthKey(), config.getChannels());
           TwitchChatMod.bot.start();
           ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.enable.connecting").formatted(Formatting.DARK_GRAY));
           // Return a result. -1 is failure, 0 is a pass and 1 is success.
@@ -0,0 +1,162 @@
+package eu.pabl.twitchchat.commands;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import eu.pabl.twitchchat.TwitchChatMod;
+import eu.pabl.twitchchat.twitch_integration.ArchivedMessage;
+import eu.pabl.twitchchat.twitch_integration.Bot;
+import eu.pabl.twitchchat.twitch_integration.ChatArchiver;
+import eu.pabl.twitchchat.twitch_integration.ChatHistory;
+import eu.pabl.twitchchat.twitch_integration.UserColorCache;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextColor;
+import net.minecraft.util.Formatting;
+
+public class TwitchHistoryCommand implements SubCommand {
+  static final int PAGE_SIZE = 10;
+
+  public ArgumentBuilder<FabricClientCommandSource, ?> getArgumentBuilder() {
+    return ClientCommandManager.literal("history")
+        // The command to be executed if the command "twitch" is entered with the argument "history"
+        // It shows the latest Twitch messages, even the ones that have scrolled out of the chat.
+        .executes(ctx -> showRecent(ctx, 1))
+        .then(ClientCommandManager.argument("page", IntegerArgumentType.integer(1))
+            .executes(ctx -> showRecent(ctx, IntegerArgumentType.getInteger(ctx, "page"))))
+        // The command to be executed if the command "twitch" is entered with the arguments "history since"
+        // It shows the messages from the last few minutes, oldest first.
+        .then(ClientCommandManager.literal("since")
+            .then(ClientCommandManager.argument("minutes", IntegerArgumentType.integer(1))
+                .executes(ctx -> showSince(ctx, IntegerArgumentType.getInteger(ctx, "minutes"), 1))
+                .then(ClientCommandManager.argument("page", IntegerArgumentType.integer(1))
+                    .executes(ctx -> showSince(ctx, IntegerArgumentType.getInteger(ctx, "minutes"),
+                        IntegerArgumentType.getInteger(ctx, "page"))))))
+        // The command to be executed if the command "twitch" is entered with the arguments "history archive"
+        // It's like "history since", but reads the archive files, so it goes back further and works after /twitch disable.
+        .then(ClientCommandManager.literal("archive")
+            .then(ClientCommandManager.argument("minutes", IntegerArgumentType.integer(1))
+                .executes(ctx -> showArchive(ctx, IntegerArgumentType.getInteger(ctx, "minutes"), 1))
+                .then(ClientCommandManager.argument("page", IntegerArgumentType.integer(1))
+                    .executes(ctx -> showArchive(ctx, IntegerArgumentType.getInteger(ctx, "minutes"),
+                        IntegerArgumentType.getInteger(ctx, "page"))))));
+  }
+
+  private static int showRecent(CommandContext<FabricClientCommandSource> ctx, int page) {
+    ChatHistory history = getHistory(ctx);
+    if (history == null) {
+      return -1;
+    }
+    // Newer messages are on the first pages, so going back in time is going forward in pages.
+    sendPage(ctx, Text.translatable("text.twitchchat.command.history.title"), history.recent(page, PAGE_SIZE),
+        p -> "/twitch history " + p, "text.twitchchat.command.history.older", "text.twitchchat.command.history.newer");
+    return 1;
+  }
+
+  private static int showSince(CommandContext<FabricClientCommandSource> ctx, int minutes, int page) {
+    ChatHistory history = getHistory(ctx);
+    if (history == null) {
+      return -1;
+    }
+    long since = System.currentTimeMillis() - minutes * 60_000L;
+    sendPage(ctx, Text.translatable("text.twitchchat.command.history.since_title", minutes),
+        history.since(since, page, PAGE_SIZE), p -> "/twitch history since " + minutes + " " + p,
+        "text.twitchchat.command.history.newer", "text.twitchchat.command.history.older");
+    return 1;
+  }
+
+  private static int showArchive(CommandContext<FabricClientCommandSource> ctx, int minutes, int page) {
+    long to = System.currentTimeMillis();
+    long from = to - minutes * 60_000L;
+    // The archive can be big, it's read off the client thread and the page is shown once it's ready.
+    Thread.ofVirtual().name("Twitch Chat archive reader").start(() -> {
+      List<ArchivedMessage> messages = new ArrayList<>(PAGE_SIZE);
+      int[] total = {0};
+      int first = (page - 1) * PAGE_SIZE;
+      try {
+        ChatArchiver.read(Bot.getArchiveDirectory(), from, to, message -> {
+          if (total[0] >= first && total[0] < first + PAGE_SIZE) {
+            messages.add(message);
+          }
+          total[0]++;
+        });
+      } catch (IOException e) {
+        MinecraftClient.getInstance().execute(() -> ctx.getSource().sendError(
+            Text.translatable("text.twitchchat.command.history.archive_error", e.getMessage())));
+        return;
+      }
+      int pageCount = Math.max(1, (total[0] + PAGE_SIZE - 1) / PAGE_SIZE);
+      MinecraftClient.getInstance().execute(() -> sendPage(ctx,
+          Text.translatable("text.twitchchat.command.history.archive_title", minutes),
+          new ChatHistory.Page(messages, Math.min(page, pageCount), pageCount),
+          p -> "/twitch history archive " + minutes + " " + p,
+          "text.twitchchat.command.history.newer", "text.twitchchat.command.history.older"));
+    });
+    return 1;
+  }
+
+  static ChatHistory getHistory(CommandContext<FabricClientCommandSource> ctx) {
+    if (TwitchChatMod.bot == null) {
+      ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.chat.integration_disabled"));
+      return null;
+    }
+    return TwitchChatMod.bot.getChatHistory();
+  }
+
+  /**
+   * Shows a page of messages, with links to the previous and next pages.
+   */
+  static void sendPage(CommandContext<FabricClientCommandSource> ctx, MutableText title, ChatHistory.Page page,
+                       IntFunction<String> pageCommand, String nextPageKey, String previousPageKey) {
+    FabricClientCommandSource source = ctx.getSource();
+    if (page.messages().isEmpty()) {
+      source.sendFeedback(Text.translatable("text.twitchchat.command.history.empty").formatted(Formatting.DARK_GRAY));
+      return;
+    }
+
+    source.sendFeedback(title.formatted(Formatting.GOLD));
+    for (ArchivedMessage message : page.messages()) {
+      source.sendFeedback(format(message));
+    }
+
+    MutableText footer = Text.translatable("text.twitchchat.command.history.page", page.page(), page.pageCount())
+        .formatted(Formatting.DARK_GRAY);
+    if (page.page() > 1) {
+      footer.append(" ").append(pageLink(previousPageKey, pageCommand.apply(page.page() - 1)));
+    }
+    if (page.page() < page.pageCount()) {
+      footer.append(" ").append(pageLink(nextPageKey, pageCommand.apply(page.page() + 1)));
+    }
+    source.sendFeedback(footer);
+  }
+
+  private static Text pageLink(String key, String command) {
+    return Text.translatable(key).styled(style -> style
+        .withColor(Formatting.AQUA)
+        .withUnderline(true)
+        .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command)));
+  }
+
+  private static Text format(ArchivedMessage message) {
+    int rgb = message.color();
+    if (rgb == UserColorCache.NO_COLOR && TwitchChatMod.bot != null) {
+      rgb = TwitchChatMod.bot.getUserColorCache().resolve(message.username(), UserColorCache.NO_COLOR);
+    }
+    TextColor color = TextColor.fromRgb(rgb);
+    MutableText line = Text.literal(TwitchChatMod.formatTMISentTimestamp(message.timestamp()) + "[" + message.channel() + "] ");
+    if (message.isMeMessage()) {
+      return line.append(Text.literal("* " + message.username() + " " + message.message())
+          .styled(style -> style.withColor(color)));
+    }
+    return line.append(Text.literal(message.username()).styled(style -> style.withColor(color)))
+        .append(Text.literal(": " + message.message()));
+  }
+}
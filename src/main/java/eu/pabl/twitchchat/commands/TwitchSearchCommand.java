@@ -0,0 +1,36 @@
+package eu.pabl.twitchchat.commands;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import eu.pabl.twitchchat.twitch_integration.ChatHistory;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.text.Text;
+
+public class TwitchSearchCommand implements SubCommand {
+  public ArgumentBuilder<FabricClientCommandSource, ?> getArgumentBuilder() {
+    return ClientCommandManager.literal("search")
+        // The command to be executed if the command "twitch" is entered with the argument "search"
+        // It requires a query as an argument: words (quoted if there are several) that every message must have,
+        // and @name to only find the messages of a chatter.
+        .then(ClientCommandManager.argument("query", StringArgumentType.string())
+            .executes(ctx -> search(ctx, StringArgumentType.getString(ctx, "query"), 1))
+            .then(ClientCommandManager.argument("page", IntegerArgumentType.integer(1))
+                .executes(ctx -> search(ctx, StringArgumentType.getString(ctx, "query"),
+                    IntegerArgumentType.getInteger(ctx, "page")))));
+  }
+
+  private static int search(CommandContext<FabricClientCommandSource> ctx, String query, int page) {
+    ChatHistory history = TwitchHistoryCommand.getHistory(ctx);
+    if (history == null) {
+      return -1;
+    }
+    String escapedQuery = StringArgumentType.escapeIfRequired(query);
+    TwitchHistoryCommand.sendPage(ctx, Text.translatable("text.twitchchat.command.search.title", query),
+        history.search(query, page, TwitchHistoryCommand.PAGE_SIZE), p -> "/twitch search " + escapedQuery + " " + p,
+        "text.twitchchat.command.history.older", "text.twitchchat.command.history.newer");
+    return 1;
+  }
+}
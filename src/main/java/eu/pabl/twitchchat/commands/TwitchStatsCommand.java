@@ -0,0 +1,45 @@
+package eu.pabl.twitchchat.commands;
+
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import eu.pabl.twitchchat.config.ModConfig;
+import eu.pabl.twitchchat.twitch_integration.TwitchMetrics;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+public class TwitchStatsCommand implements SubCommand {
+  public ArgumentBuilder<FabricClientCommandSource, ?> getArgumentBuilder() {
+    return ClientCommandManager.literal("stats")
+        // The command to be executed if the command "twitch" is entered with the argument "stats"
+        // It shows how many messages went through the bridge and how long they took.
+        .executes(ctx -> {
+          ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.stats.title").formatted(Formatting.GOLD));
+          for (Text line : TwitchMetrics.describe()) {
+            ctx.getSource().sendFeedback(line);
+          }
+          return 1;
+        })
+        .then(ClientCommandManager.literal("reset")
+            .executes(ctx -> {
+              TwitchMetrics.reset();
+              ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.stats.reset"));
+              return 1;
+            }))
+        // Shows the stats on screen all the time.
+        .then(ClientCommandManager.literal("overlay")
+            .then(ClientCommandManager.argument("enabled", BoolArgumentType.bool())
+                .executes(ctx -> {
+                  boolean enabled = BoolArgumentType.getBool(ctx, "enabled");
+                  ModConfig.setStatsOverlayEnabled(enabled);
+                  ModConfig.save();
+                  if (enabled) {
+                    ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.stats.overlay_enabled"));
+                  } else {
+                    ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.stats.overlay_disabled"));
+                  }
+                  return 1;
+                })));
+  }
+}
@@ -11,6 +11,49 @@ import eu.pabl.twitchchat.TwitchChatMod;
 public class TwitchWatchCommand implements SubCommand {
   public ArgumentBuilder<FabricClientCommandSource, ?> getArgumentBuilder() {
     return ClientCommandManager.literal("watch")
+        // The command to be executed if the command "twitch" is entered with the arguments "watch add"
+        // It requires channel_name as an argument.
+        // It will add the channel to the ones being watched, without leaving the others.
+        .then(ClientCommandManager.literal("add")
+            .then(ClientCommandManager.argument("channel_name", StringArgumentType.string())
+                .suggests(new TwitchWatchSuggestionProvider())
+                .executes(ctx -> {
+                  String channelName = StringArgumentType.getString(ctx, "channel_name");
+
+                  ModConfig.addChannel(channelName);
+                  if (TwitchChatMod.bot != null) {
+                    TwitchChatMod.bot.addChannel(channelName);
+                  }
+                  ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.watch.added", channelName));
+                  ModConfig.save();
+                  return 1;
+                })))
+        // The command to be executed if the command "twitch" is entered with the arguments "watch remove"
+        // It requires channel_name as an argument.
+        // It will stop watching that channel, and keep watching the others.
+        .then(ClientCommandManager.literal("remove")
+            .then(ClientCommandManager.argument("channel_name", StringArgumentType.string())
+                .suggests((ctx, builder) -> {
+                  for (String channel : ModConfig.getConfig().getChannels()) {
+                    builder.suggest(channel);
+                  }
+                  return builder.buildFuture();
+                })
+                .executes(ctx -> {
+                  String channelName = StringArgumentType.getString(ctx, "channel_name");
+
+                  if (!ModConfig.getConfig().getChannels().contains(channelName.toLowerCase())) {
+                    ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.watch.not_watching", channelName));
+                    return -1;
+                  }
+                  ModConfig.removeChannel(channelName);
+                  if (TwitchChatMod.bot != null) {
+                    TwitchChatMod.bot.removeChannel(channelName);
+                  }
+                  ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.watch.removed", channelName));
+                  ModConfig.save();
+                  return 1;
+                })))
         // The command to be executed if the command "twitch" is entered with the argument "watch"
         // It requires channel_name as an argument.
         // It will switch channels in the config to the channel name provided and
@@ -20,7 +63,7 @@ public class TwitchWatchCommand implements SubCommand {
             .executes(ctx -> {
               String channelName = StringArgumentType.getString(ctx, "channel_name");
 
-              ModConfig.getConfig().setChannel(channelName);
+              ModConfig.setChannel(channelName);
               // Also switch channels if the bot has been initialized
               if (TwitchChatMod.bot != null) {
                 ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.watch.switching", channelName));
@@ -28,7 +71,7 @@ public class TwitchWatchCommand implements SubCommand {
               } else {
                 ctx.getSource().sendFeedback(Text.translatable("text.twitchchat.command.watch.connect_on_enable", channelName));
               }
-              ModConfig.getConfig().save();
+              ModConfig.save();
               return 1;
         }));
   }
@@ -0,0 +1,122 @@
+package eu.pabl.twitchchat.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The ignore list compiled for fast lookups. It is built once every time the ignore list changes.
+ *
+ * Entries can be plain usernames, prefixes ("spambot*") or wildcards using '*' and '?' ("*_bot", "bot?").
+ * Plain usernames go into a hash set and prefixes into a trie, so checking a username costs the same no matter how
+ * long the list is. The remaining wildcards are joined into a single regular expression.
+ */
+public class IgnoreListMatcher {
+  public static final IgnoreListMatcher EMPTY = compile(List.of());
+
+  private static class PrefixNode {
+    final HashMap<Character, PrefixNode> children = new HashMap<>();
+    boolean terminal;
+  }
+
+  private final Set<String> usernames;
+  private final PrefixNode prefixes;
+  private final Pattern wildcards;
+
+  private IgnoreListMatcher(Set<String> usernames, PrefixNode prefixes, Pattern wildcards) {
+    this.usernames = usernames;
+    this.prefixes = prefixes;
+    this.wildcards = wildcards;
+  }
+
+  public static IgnoreListMatcher compile(List<String> ignoreList) {
+    Set<String> usernames = new HashSet<>();
+    PrefixNode prefixes = null;
+    List<String> wildcardRegexes = new ArrayList<>();
+
+    for (String entry : ignoreList) {
+      String pattern = entry.trim().toLowerCase(Locale.ROOT);
+      if (pattern.isEmpty()) {
+        continue;
+      }
+
+      int firstWildcard = indexOfWildcard(pattern);
+      if (firstWildcard == -1) {
+        usernames.add(pattern);
+      } else if (firstWildcard == pattern.length() - 1 && pattern.charAt(firstWildcard) == '*') {
+        if (prefixes == null) {
+          prefixes = new PrefixNode();
+        }
+        PrefixNode node = prefixes;
+        for (int i = 0; i < firstWildcard; i++) {
+          node = node.children.computeIfAbsent(pattern.charAt(i), c -> new PrefixNode());
+        }
+        node.terminal = true;
+      } else {
+        wildcardRegexes.add(wildcardToRegex(pattern));
+      }
+    }
+
+    Pattern wildcards = wildcardRegexes.isEmpty() ? null : Pattern.compile(String.join("|", wildcardRegexes));
+    return new IgnoreListMatcher(Set.copyOf(usernames), prefixes, wildcards);
+  }
+
+  public boolean matches(String username) {
+    // Twitch usernames are almost always lowercase already, in that case toLowerCase doesn't create a new string.
+    String name = username.toLowerCase(Locale.ROOT);
+    if (usernames.contains(name)) {
+      return true;
+    }
+
+    if (prefixes != null) {
+      PrefixNode node = prefixes;
+      if (node.terminal) {
+        return true;
+      }
+      for (int i = 0; i < name.length(); i++) {
+        node = node.children.get(name.charAt(i));
+        if (node == null) {
+          break;
+        }
+        if (node.terminal) {
+          return true;
+        }
+      }
+    }
+
+    return wildcards != null && wildcards.matcher(name).matches();
+  }
+
+  private static int indexOfWildcard(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' || c == '?') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String wildcardToRegex(String pattern) {
+    StringBuilder regex = new StringBuilder("(?:");
+    int literalStart = 0;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' || c == '?') {
+        if (literalStart < i) {
+          regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+        }
+        regex.append(c == '*' ? ".*" : ".");
+        literalStart = i + 1;
+      }
+    }
+    if (literalStart < pattern.length()) {
+      regex.append(Pattern.quote(pattern.substring(literalStart)));
+    }
+    return regex.append(')').toString();
+  }
+}
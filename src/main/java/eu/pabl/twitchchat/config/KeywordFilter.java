@@ -0,0 +1,247 @@
+package eu.pabl.twitchchat.config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import net.minecraft.text.Text;
+
+/**
+ * The highlight, hide and redact keywords compiled for fast matching. It is built once every time the keywords change.
+ *
+ * Every keyword of every kind goes into a single Aho-Corasick automaton, so a message is scanned in one pass whatever
+ * the number of keywords. Keywords match anywhere in the message, ignoring case. Entries written as "/regex/" are
+ * joined into one regular expression per kind instead, which costs an extra pass per kind that has any.
+ */
+public class KeywordFilter {
+  public static final int HIGHLIGHT = 1;
+  public static final int HIDE = 2;
+  public static final int REDACT = 4;
+  public static final KeywordFilter EMPTY = compile(List.of(), List.of(), List.of());
+
+  private static final char REDACTED = '*';
+
+  // The automaton, one entry per state, state 0 being the root. Transitions are sorted by character.
+  private final char[][] transitionChars;
+  private final int[][] transitionStates;
+  private final int[] failure;
+  // The kinds of the keywords that end at each state, including the ones of its failure states.
+  private final int[] actions;
+  // The length of the longest redacted keyword that ends at each state.
+  private final int[] redactLengths;
+  private final Pattern highlightRegex;
+  private final Pattern hideRegex;
+  private final Pattern redactRegex;
+
+  private KeywordFilter(char[][] transitionChars, int[][] transitionStates, int[] failure, int[] actions,
+                        int[] redactLengths, Pattern highlightRegex, Pattern hideRegex, Pattern redactRegex) {
+    this.transitionChars = transitionChars;
+    this.transitionStates = transitionStates;
+    this.failure = failure;
+    this.actions = actions;
+    this.redactLengths = redactLengths;
+    this.highlightRegex = highlightRegex;
+    this.hideRegex = hideRegex;
+    this.redactRegex = redactRegex;
+  }
+
+  public static KeywordFilter compile(List<String> highlight, List<String> hide, List<String> redact) {
+    List<Map<Character, Integer>> trie = new ArrayList<>();
+    List<Integer> actions = new ArrayList<>();
+    List<Integer> redactLengths = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    actions.add(0);
+    redactLengths.add(0);
+
+    List<List<String>> keywords = List.of(highlight, hide, redact);
+    List<List<String>> regexes = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    for (int kind = 0; kind < keywords.size(); kind++) {
+      int action = 1 << kind;
+      for (String entry : keywords.get(kind)) {
+        if (isRegex(entry)) {
+          String regex = entry.substring(1, entry.length() - 1);
+          if (validateRegex(regex).isEmpty()) {
+            regexes.get(kind).add("(?:" + regex + ")");
+          }
+          continue;
+        }
+        String keyword = entry.trim();
+        if (keyword.isEmpty()) {
+          continue;
+        }
+        int state = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+          // Lowercased one char at a time, like the messages, so lengths don't change.
+          char c = Character.toLowerCase(keyword.charAt(i));
+          Integer next = trie.get(state).get(c);
+          if (next == null) {
+            next = trie.size();
+            trie.get(state).put(c, next);
+            trie.add(new TreeMap<>());
+            actions.add(0);
+            redactLengths.add(0);
+          }
+          state = next;
+        }
+        actions.set(state, actions.get(state) | action);
+        if (action == REDACT) {
+          redactLengths.set(state, keyword.length());
+        }
+      }
+    }
+
+    int stateCount = trie.size();
+    char[][] transitionChars = new char[stateCount][];
+    int[][] transitionStates = new int[stateCount][];
+    int[] failure = new int[stateCount];
+    int[] stateActions = new int[stateCount];
+    int[] stateRedactLengths = new int[stateCount];
+    for (int state = 0; state < stateCount; state++) {
+      Map<Character, Integer> transitions = trie.get(state);
+      transitionChars[state] = new char[transitions.size()];
+      transitionStates[state] = new int[transitions.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+        transitionChars[state][i] = transition.getKey();
+        transitionStates[state][i] = transition.getValue();
+        i++;
+      }
+      stateActions[state] = actions.get(state);
+      stateRedactLengths[state] = redactLengths.get(state);
+    }
+
+    KeywordFilter filter = new KeywordFilter(transitionChars, transitionStates, failure, stateActions,
+        stateRedactLengths, joinRegexes(regexes.get(0)), joinRegexes(regexes.get(1)), joinRegexes(regexes.get(2)));
+    // Breadth first, so the failure state of a state is always done before it.
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for (int child : transitionStates[0]) {
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      for (int i = 0; i < transitionChars[state].length; i++) {
+        int child = transitionStates[state][i];
+        int fallback = state == 0 ? 0 : filter.next(failure[state], transitionChars[state][i]);
+        failure[child] = fallback;
+        stateActions[child] |= stateActions[fallback];
+        stateRedactLengths[child] = Math.max(stateRedactLengths[child], stateRedactLengths[fallback]);
+        queue.add(child);
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * @return the kinds of keywords found in the message, as HIGHLIGHT, HIDE and REDACT bits.
+   */
+  public int scan(String message) {
+    int found = 0;
+    if (transitionChars[0].length > 0) {
+      int state = 0;
+      for (int i = 0; i < message.length(); i++) {
+        state = next(state, Character.toLowerCase(message.charAt(i)));
+        found |= actions[state];
+      }
+    }
+    if (highlightRegex != null && (found & HIGHLIGHT) == 0 && highlightRegex.matcher(message).find()) {
+      found |= HIGHLIGHT;
+    }
+    if (hideRegex != null && (found & HIDE) == 0 && hideRegex.matcher(message).find()) {
+      found |= HIDE;
+    }
+    if (redactRegex != null && (found & REDACT) == 0 && redactRegex.matcher(message).find()) {
+      found |= REDACT;
+    }
+    return found;
+  }
+
+  /**
+   * Replaces every redacted keyword in the message with asterisks, one per code point so emote positions still line up.
+   */
+  public String redact(String message) {
+    boolean[] redacted = new boolean[message.length()];
+    if (transitionChars[0].length > 0) {
+      int state = 0;
+      for (int i = 0; i < message.length(); i++) {
+        state = next(state, Character.toLowerCase(message.charAt(i)));
+        for (int j = i - redactLengths[state] + 1; j <= i; j++) {
+          redacted[j] = true;
+        }
+      }
+    }
+    if (redactRegex != null) {
+      Matcher matcher = redactRegex.matcher(message);
+      while (matcher.find()) {
+        for (int j = matcher.start(); j < matcher.end(); j++) {
+          redacted[j] = true;
+        }
+      }
+    }
+
+    StringBuilder builder = new StringBuilder(message.length());
+    for (int i = 0; i < message.length(); i += Character.charCount(message.codePointAt(i))) {
+      if (redacted[i]) {
+        builder.append(REDACTED);
+      } else {
+        builder.appendCodePoint(message.codePointAt(i));
+      }
+    }
+    return builder.toString();
+  }
+
+  private int next(int state, char c) {
+    while (true) {
+      int i = binarySearch(transitionChars[state], c);
+      if (i >= 0) {
+        return transitionStates[state][i];
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = failure[state];
+    }
+  }
+
+  private static int binarySearch(char[] chars, char c) {
+    // Most states have a single transition.
+    if (chars.length == 1) {
+      return chars[0] == c ? 0 : -1;
+    }
+    return Arrays.binarySearch(chars, c);
+  }
+
+  private static boolean isRegex(String entry) {
+    return entry.length() > 2 && entry.startsWith("/") && entry.endsWith("/");
+  }
+
+  private static Pattern joinRegexes(List<String> regexes) {
+    return regexes.isEmpty() ? null
+        : Pattern.compile(String.join("|", regexes), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+  }
+
+  private static Optional<String> validateRegex(String regex) {
+    try {
+      Pattern.compile(regex);
+      return Optional.empty();
+    } catch (PatternSyntaxException e) {
+      return Optional.of(e.getDescription());
+    }
+  }
+
+  /**
+   * Checks a keyword list entry for the config screen. Invalid regular expressions are left out of the filter.
+   */
+  public static Optional<Text> validate(String entry) {
+    if (!isRegex(entry)) {
+      return Optional.empty();
+    }
+    return validateRegex(entry.substring(1, entry.length() - 1))
+        .map(error -> Text.translatable("config.twitchchat.filters.invalidRegex", error));
+  }
+}
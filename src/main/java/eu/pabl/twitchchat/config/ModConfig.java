@@ -4,18 +4,41 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import java.io.File;
-import java.io.FileNotFoundException;
+import eu.pabl.twitchchat.emotes.UrlEmoteSource;
+import eu.pabl.twitchchat.twitch_integration.ChatMessageQueue.OverflowPolicy;
+import eu.pabl.twitchchat.twitch_integration.TwitchEvent.AlertStyle;
+import eu.pabl.twitchchat.twitch_integration.TwitchLogger;
+import eu.pabl.twitchchat.twitch_integration.TwitchTransport;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import net.fabricmc.loader.api.FabricLoader;
 
-public class ModConfig {
+/**
+ * The mod's settings, as saved in config/twitchchat.json.
+ *
+ * A ModConfig never changes once it's been published: the setters are static and swap in a changed copy of the current
+ * config, so the IRC thread can read the settings while they're being changed from the client thread, and anything
+ * derived from them (like the ignore list matcher) is computed once per change instead of on every message. A config
+ * that was read before a change keeps its old values, get the new one with {@link #getConfig()}.
+ */
+public class ModConfig implements Cloneable {
 
   public static final String DEFAULT_CHANNEL = "";
   public static final String DEFAULT_USERNAME = "";
@@ -23,97 +46,473 @@ public class ModConfig {
   public static final String DEFAULT_PREFIX = ":";
   public static final String DEFAULT_DATE_FORMAT = "[H:mm] ";
   public static final List<String> DEFAULT_IGNORE_LIST = new ArrayList<>();
+  public static final List<String> DEFAULT_HIGHLIGHT_KEYWORDS = new ArrayList<>();
+  public static final List<String> DEFAULT_HIDDEN_KEYWORDS = new ArrayList<>();
+  public static final List<String> DEFAULT_REDACTED_KEYWORDS = new ArrayList<>();
   public static final boolean DEFAULT_TWITCH_WATCH_SUGGESTIONS = false;
   public static final boolean DEFAULT_BROADCAST = false;
   public static final String DEFAULT_BROADCAST_PREFIX = "[Twitch] ";
-
-  private static ModConfig SINGLE_INSTANCE = null;
-  private final File configFile;
-
-  private String channel;
+  public static final int DEFAULT_QUEUE_CAPACITY = 500;
+  public static final int DEFAULT_MESSAGES_PER_TICK = 10;
+  public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+  public static final int DEFAULT_COLOR_CACHE_SIZE = 10000;
+  public static final int DEFAULT_COLOR_CACHE_TTL_MINUTES = 0;
+  public static final String DEFAULT_SERVER_HOST = "irc.chat.twitch.tv";
+  public static final int DEFAULT_SERVER_PORT = 6697;
+  public static final boolean DEFAULT_SERVER_TLS = true;
+  public static final int DEFAULT_SEND_QUEUE_CAPACITY = 10;
+  public static final boolean DEFAULT_AUTO_RECONNECT = true;
+  public static final TwitchLogger.Level DEFAULT_LOG_LEVEL = TwitchLogger.Level.INFO;
+  public static final int DEFAULT_LOG_SAMPLE_RATE = 100;
+  public static final boolean DEFAULT_STATS_OVERLAY = false;
+  public static final int DEFAULT_DEDUP_WINDOW_SECONDS = 10;
+  public static final int DEFAULT_SAMPLING_THRESHOLD = 30;
+  public static final int DEFAULT_SAMPLING_TARGET_RATE = 10;
+  public static final boolean DEFAULT_SAMPLING_KEEP_MODERATORS = true;
+  public static final boolean DEFAULT_SAMPLING_KEEP_VIPS = true;
+  public static final boolean DEFAULT_SAMPLING_KEEP_SUBSCRIBERS = false;
+  public static final boolean DEFAULT_SAMPLING_KEEP_MENTIONS = true;
+  public static final boolean DEFAULT_SAMPLING_KEEP_BITS = true;
+  public static final boolean DEFAULT_ARCHIVE_ENABLED = false;
+  public static final int DEFAULT_ARCHIVE_SEGMENT_SIZE_MB = 16;
+  // Segments are read back into a single buffer, which can't be 2 GB or bigger.
+  public static final int MAX_ARCHIVE_SEGMENT_SIZE_MB = 1024;
+  public static final int DEFAULT_HISTORY_SIZE = 50_000;
+  public static final int DEFAULT_BROADCAST_INTERVAL_SECONDS = 5;
+  public static final int DEFAULT_BROADCAST_MESSAGES_PER_MINUTE = 6;
+  public static final boolean DEFAULT_EMOTES_ENABLED = true;
+  public static final String DEFAULT_EMOTE_URL_TEMPLATE = UrlEmoteSource.TWITCH_CDN_TEMPLATE;
+  public static final boolean DEFAULT_EMOTE_DISK_CACHE_ENABLED = true;
+  public static final boolean DEFAULT_HIDE_DELETED_MESSAGES = false;
+  public static final AlertStyle DEFAULT_EVENT_ALERT_STYLE = AlertStyle.NONE;
+  public static final TwitchTransport.Type DEFAULT_TRANSPORT = TwitchTransport.Type.PIRCBOTX;
+
+  private static final TwitchLogger LOG = TwitchLogger.get("config");
+  private static final AtomicReference<ModConfig> CURRENT = new AtomicReference<>(new ModConfig());
+  private static final ExecutorService SAVER = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "Twitch Chat config saver"));
+  private static final AtomicBoolean savePending = new AtomicBoolean();
+  // What twitchchat.json had when we last read or wrote it, to tell our own changes apart from the user's.
+  private static volatile String lastSavedJson;
+
+  private List<String> channels; // The first one is the primary channel, where our messages are sent
   private String username;
   private String oauthKey;
   private String prefix;
   private String dateFormat;
   private List<String> ignoreList;
+  private IgnoreListMatcher ignoreListMatcher;
+  private List<String> highlightKeywords;
+  private List<String> hiddenKeywords;
+  private List<String> redactedKeywords;
+  private KeywordFilter keywordFilter;
   private boolean twitchWatchSuggestions;
   private boolean broadcast;
   private String broadcastPrefix;
+  private int queueCapacity;
+  private int messagesPerTick;
+  private OverflowPolicy overflowPolicy;
+  private int colorCacheSize;
+  private int colorCacheTtlMinutes;
+  private String serverHost;
+  private int serverPort;
+  private boolean serverTls;
+  private int sendQueueCapacity;
+  private boolean autoReconnect;
+  private TwitchLogger.Level logLevel;
+  private int logSampleRate;
+  private boolean statsOverlay;
+  private int dedupWindowSeconds;
+  private int samplingThreshold;
+  private int samplingTargetRate;
+  private boolean samplingKeepModerators;
+  private boolean samplingKeepVips;
+  private boolean samplingKeepSubscribers;
+  private boolean samplingKeepMentions;
+  private boolean samplingKeepBits;
+  private boolean archiveEnabled;
+  private int archiveSegmentSizeMb;
+  private int historySize;
+  private int broadcastIntervalSeconds;
+  private int broadcastMessagesPerMinute;
+  private boolean emotesEnabled;
+  private String emoteUrlTemplate;
+  private boolean emoteDiskCacheEnabled;
+  private boolean hideDeletedMessages;
+  private AlertStyle eventAlertStyle;
+  private TwitchTransport.Type transport;
 
   public ModConfig() {
-    this.configFile = FabricLoader
-        .getInstance()
-        .getConfigDir()
-        .resolve("twitchchat.json")
-        .toFile();
-    this.channel = DEFAULT_CHANNEL;
+    this.channels = List.of();
     this.username = DEFAULT_USERNAME;
     this.oauthKey = DEFAULT_OAUTH_KEY;
     this.prefix = DEFAULT_PREFIX;
     this.dateFormat = DEFAULT_DATE_FORMAT;
-    this.ignoreList = new ArrayList<>(DEFAULT_IGNORE_LIST);
+    this.ignoreList = List.copyOf(DEFAULT_IGNORE_LIST);
+    this.ignoreListMatcher = IgnoreListMatcher.EMPTY;
+    this.highlightKeywords = List.copyOf(DEFAULT_HIGHLIGHT_KEYWORDS);
+    this.hiddenKeywords = List.copyOf(DEFAULT_HIDDEN_KEYWORDS);
+    this.redactedKeywords = List.copyOf(DEFAULT_REDACTED_KEYWORDS);
+    this.keywordFilter = KeywordFilter.EMPTY;
     this.twitchWatchSuggestions = DEFAULT_TWITCH_WATCH_SUGGESTIONS;
     this.broadcast = DEFAULT_BROADCAST;
     this.broadcastPrefix = DEFAULT_BROADCAST_PREFIX;
+    this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    this.messagesPerTick = DEFAULT_MESSAGES_PER_TICK;
+    this.overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+    this.colorCacheSize = DEFAULT_COLOR_CACHE_SIZE;
+    this.colorCacheTtlMinutes = DEFAULT_COLOR_CACHE_TTL_MINUTES;
+    this.serverHost = DEFAULT_SERVER_HOST;
+    this.serverPort = DEFAULT_SERVER_PORT;
+    this.serverTls = DEFAULT_SERVER_TLS;
+    this.sendQueueCapacity = DEFAULT_SEND_QUEUE_CAPACITY;
+    this.autoReconnect = DEFAULT_AUTO_RECONNECT;
+    this.logLevel = DEFAULT_LOG_LEVEL;
+    this.logSampleRate = DEFAULT_LOG_SAMPLE_RATE;
+    this.statsOverlay = DEFAULT_STATS_OVERLAY;
+    this.dedupWindowSeconds = DEFAULT_DEDUP_WINDOW_SECONDS;
+    this.samplingThreshold = DEFAULT_SAMPLING_THRESHOLD;
+    this.samplingTargetRate = DEFAULT_SAMPLING_TARGET_RATE;
+    this.samplingKeepModerators = DEFAULT_SAMPLING_KEEP_MODERATORS;
+    this.samplingKeepVips = DEFAULT_SAMPLING_KEEP_VIPS;
+    this.samplingKeepSubscribers = DEFAULT_SAMPLING_KEEP_SUBSCRIBERS;
+    this.samplingKeepMentions = DEFAULT_SAMPLING_KEEP_MENTIONS;
+    this.samplingKeepBits = DEFAULT_SAMPLING_KEEP_BITS;
+    this.archiveEnabled = DEFAULT_ARCHIVE_ENABLED;
+    this.archiveSegmentSizeMb = DEFAULT_ARCHIVE_SEGMENT_SIZE_MB;
+    this.historySize = DEFAULT_HISTORY_SIZE;
+    this.broadcastIntervalSeconds = DEFAULT_BROADCAST_INTERVAL_SECONDS;
+    this.broadcastMessagesPerMinute = DEFAULT_BROADCAST_MESSAGES_PER_MINUTE;
+    this.emotesEnabled = DEFAULT_EMOTES_ENABLED;
+    this.emoteUrlTemplate = DEFAULT_EMOTE_URL_TEMPLATE;
+    this.emoteDiskCacheEnabled = DEFAULT_EMOTE_DISK_CACHE_ENABLED;
+    this.hideDeletedMessages = DEFAULT_HIDE_DELETED_MESSAGES;
+    this.eventAlertStyle = DEFAULT_EVENT_ALERT_STYLE;
+    this.transport = DEFAULT_TRANSPORT;
   }
 
+  /**
+   * @return the current config. It never changes, hold on to it to read several settings that go together.
+   */
   public static ModConfig getConfig() {
-    if (SINGLE_INSTANCE == null) {
-      SINGLE_INSTANCE = new ModConfig();
+    return CURRENT.get();
+  }
+
+  /**
+   * Replaces the current config with a changed copy of it. The change can run more than once when the config is
+   * changed from two threads at the same time, so it must only set fields of the copy.
+   */
+  private static void update(Consumer<ModConfig> change) {
+    CURRENT.updateAndGet(current -> {
+      ModConfig next = current.copy();
+      change.accept(next);
+      return next;
+    });
+  }
+
+  private ModConfig copy() {
+    try {
+      // Shallow, the lists are immutable.
+      return (ModConfig) clone();
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
     }
+  }
+
+  private static Path configFile() {
+    // Not resolved statically, so that the defaults can be used without a game directory (in benchmarks).
+    return FabricLoader
+        .getInstance()
+        .getConfigDir()
+        .resolve("twitchchat.json");
+  }
 
-    return SINGLE_INSTANCE;
+  /**
+   * Reloads the config whenever twitchchat.json is changed by something other than us, like a text editor.
+   * @param onReload called from the watching thread after a reload.
+   */
+  public static void watchForChanges(Runnable onReload) {
+    Path file = configFile();
+    Thread watcher = new Thread(() -> {
+      try (WatchService watchService = file.getFileSystem().newWatchService()) {
+        Files.createDirectories(file.getParent());
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        while (true) {
+          WatchKey key = watchService.take();
+          boolean changed = false;
+          for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= file.getFileName().equals(event.context());
+          }
+          if (changed) {
+            reloadIfChanged(file, onReload);
+          }
+          if (!key.reset()) {
+            break;
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Couldn't watch {} for changes: {}", file, e.getMessage());
+      } catch (InterruptedException e) {
+        // Stopped with the game.
+      }
+    }, "Twitch Chat config watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  private static void reloadIfChanged(Path file, Runnable onReload) {
+    String json;
+    try {
+      json = Files.readString(file, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return; // Deleted, or being replaced.
+    }
+    // Our own saves, and editors that touch the file without changing it.
+    if (json.equals(lastSavedJson)) {
+      return;
+    }
+    ModConfig config;
+    try {
+      config = parse(json.trim());
+    } catch (RuntimeException e) {
+      // Possibly saved halfway by the editor, the next change will try again.
+      LOG.warn("Not reloading {}, it isn't valid: {}", file, e.getMessage());
+      return;
+    }
+    lastSavedJson = json;
+    CURRENT.set(config);
+    LOG.info("Reloaded {}", file);
+    onReload.run();
   }
 
-  public void load() {
+  /**
+   * Replaces the config with the one in twitchchat.json, if there is one.
+   */
+  public static void load() {
+    String json;
     try {
-      String jsonStr = new String(Files.readAllBytes(this.configFile.toPath()));
-      if (!jsonStr. equals("")) {
-        JsonObject jsonObject = (JsonObject) JsonParser.parseString(jsonStr);
-        this.channel = jsonObject.has("channel")
+      json = Files.readString(configFile(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      // Do nothing, we have no file and thus we have to keep everything as default
+      return;
+    }
+    lastSavedJson = json;
+    CURRENT.set(parse(json.trim()));
+  }
+
+  private static ModConfig parse(String jsonStr) {
+    ModConfig config = new ModConfig();
+    if (!jsonStr. equals("")) {
+      JsonObject jsonObject = (JsonObject) JsonParser.parseString(jsonStr);
+      // Older configs only have a single channel.
+      if (jsonObject.has("channels")) {
+        config.channels = List.of();
+        for (JsonElement channelJsonElement : jsonObject.getAsJsonArray("channels")) {
+          config.channels = withChannel(config.channels, channelJsonElement.getAsString());
+        }
+      } else {
+        config.channels = withChannel(List.of(), jsonObject.has("channel")
                 ? jsonObject.getAsJsonPrimitive("channel").getAsString()
-                : DEFAULT_CHANNEL;
-        this.username = jsonObject.has("username")
-                ? jsonObject.getAsJsonPrimitive("username").getAsString()
-                : DEFAULT_USERNAME;
-        this.oauthKey = jsonObject.has("oauthKey")
-                ? jsonObject.getAsJsonPrimitive("oauthKey").getAsString()
-                : DEFAULT_OAUTH_KEY;
-        this.prefix = jsonObject.has("prefix")
-                ? jsonObject.getAsJsonPrimitive("prefix").getAsString()
-                : DEFAULT_PREFIX;
-        this.dateFormat = jsonObject.has("dateFormat")
-                ? jsonObject.getAsJsonPrimitive("dateFormat").getAsString()
-                : DEFAULT_DATE_FORMAT;
-
-        if (jsonObject.has("ignoreList")) {
-          JsonArray ignoreListJsonArray = jsonObject.getAsJsonArray("ignoreList");
-          this.ignoreList = new ArrayList<>();
-          for (JsonElement usernameJsonElement : ignoreListJsonArray) {
-            this.ignoreList.add(usernameJsonElement.getAsString());
-          }
+                : DEFAULT_CHANNEL);
+      }
+      config.username = jsonObject.has("username")
+              ? jsonObject.getAsJsonPrimitive("username").getAsString()
+              : DEFAULT_USERNAME;
+      config.oauthKey = jsonObject.has("oauthKey")
+              ? jsonObject.getAsJsonPrimitive("oauthKey").getAsString()
+              : DEFAULT_OAUTH_KEY;
+      config.prefix = jsonObject.has("prefix")
+              ? jsonObject.getAsJsonPrimitive("prefix").getAsString()
+              : DEFAULT_PREFIX;
+      config.dateFormat = jsonObject.has("dateFormat")
+              ? jsonObject.getAsJsonPrimitive("dateFormat").getAsString()
+              : DEFAULT_DATE_FORMAT;
+
+      if (jsonObject.has("ignoreList")) {
+        JsonArray ignoreListJsonArray = jsonObject.getAsJsonArray("ignoreList");
+        List<String> ignoreList = new ArrayList<>();
+        for (JsonElement usernameJsonElement : ignoreListJsonArray) {
+          ignoreList.add(usernameJsonElement.getAsString());
         }
+        config.setIgnoreListOf(ignoreList);
+      }
+      config.setKeywordsOf(
+          jsonObject.has("highlightKeywords") ? stringList(jsonObject.getAsJsonArray("highlightKeywords")) : DEFAULT_HIGHLIGHT_KEYWORDS,
+          jsonObject.has("hiddenKeywords") ? stringList(jsonObject.getAsJsonArray("hiddenKeywords")) : DEFAULT_HIDDEN_KEYWORDS,
+          jsonObject.has("redactedKeywords") ? stringList(jsonObject.getAsJsonArray("redactedKeywords")) : DEFAULT_REDACTED_KEYWORDS);
+
+      config.twitchWatchSuggestions = jsonObject.has("twitchWatchSuggestions")
+              ? jsonObject.getAsJsonPrimitive("twitchWatchSuggestions").getAsBoolean()
+              : DEFAULT_TWITCH_WATCH_SUGGESTIONS;
+
+      config.broadcast = jsonObject.has("broadcast")
+              ? jsonObject.getAsJsonPrimitive("broadcast").getAsBoolean()
+              : DEFAULT_BROADCAST;
+
+      config.broadcastPrefix = jsonObject.has("broadcastPrefix")
+              ? jsonObject.getAsJsonPrimitive("broadcastPrefix").getAsString()
+              : DEFAULT_BROADCAST_PREFIX;
+
+      config.queueCapacity = jsonObject.has("queueCapacity")
+              ? jsonObject.getAsJsonPrimitive("queueCapacity").getAsInt()
+              : DEFAULT_QUEUE_CAPACITY;
+      config.messagesPerTick = jsonObject.has("messagesPerTick")
+              ? jsonObject.getAsJsonPrimitive("messagesPerTick").getAsInt()
+              : DEFAULT_MESSAGES_PER_TICK;
+      try {
+        config.overflowPolicy = jsonObject.has("overflowPolicy")
+                ? OverflowPolicy.valueOf(jsonObject.getAsJsonPrimitive("overflowPolicy").getAsString())
+                : DEFAULT_OVERFLOW_POLICY;
+      } catch (IllegalArgumentException e) {
+        config.overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+      }
 
-        this.twitchWatchSuggestions = jsonObject.has("twitchWatchSuggestions")
-                ? jsonObject.getAsJsonPrimitive("twitchWatchSuggestions").getAsBoolean()
-                : DEFAULT_TWITCH_WATCH_SUGGESTIONS;
+      config.colorCacheSize = jsonObject.has("colorCacheSize")
+              ? jsonObject.getAsJsonPrimitive("colorCacheSize").getAsInt()
+              : DEFAULT_COLOR_CACHE_SIZE;
+      config.colorCacheTtlMinutes = jsonObject.has("colorCacheTtlMinutes")
+              ? jsonObject.getAsJsonPrimitive("colorCacheTtlMinutes").getAsInt()
+              : DEFAULT_COLOR_CACHE_TTL_MINUTES;
+
+      config.serverHost = jsonObject.has("serverHost")
+              ? jsonObject.getAsJsonPrimitive("serverHost").getAsString()
+              : DEFAULT_SERVER_HOST;
+      config.serverPort = jsonObject.has("serverPort")
+              ? jsonObject.getAsJsonPrimitive("serverPort").getAsInt()
+              : DEFAULT_SERVER_PORT;
+      config.serverTls = jsonObject.has("serverTls")
+              ? jsonObject.getAsJsonPrimitive("serverTls").getAsBoolean()
+              : DEFAULT_SERVER_TLS;
+      config.sendQueueCapacity = jsonObject.has("sendQueueCapacity")
+              ? jsonObject.getAsJsonPrimitive("sendQueueCapacity").getAsInt()
+              : DEFAULT_SEND_QUEUE_CAPACITY;
+      config.autoReconnect = jsonObject.has("autoReconnect")
+              ? jsonObject.getAsJsonPrimitive("autoReconnect").getAsBoolean()
+              : DEFAULT_AUTO_RECONNECT;
+
+      try {
+        config.logLevel = jsonObject.has("logLevel")
+                ? TwitchLogger.Level.valueOf(jsonObject.getAsJsonPrimitive("logLevel").getAsString())
+                : DEFAULT_LOG_LEVEL;
+      } catch (IllegalArgumentException e) {
+        config.logLevel = DEFAULT_LOG_LEVEL;
+      }
+      config.logSampleRate = jsonObject.has("logSampleRate")
+              ? jsonObject.getAsJsonPrimitive("logSampleRate").getAsInt()
+              : DEFAULT_LOG_SAMPLE_RATE;
+      config.statsOverlay = jsonObject.has("statsOverlay")
+              ? jsonObject.getAsJsonPrimitive("statsOverlay").getAsBoolean()
+              : DEFAULT_STATS_OVERLAY;
+      config.dedupWindowSeconds = jsonObject.has("dedupWindowSeconds")
+              ? jsonObject.getAsJsonPrimitive("dedupWindowSeconds").getAsInt()
+              : DEFAULT_DEDUP_WINDOW_SECONDS;
+
+      config.samplingThreshold = jsonObject.has("samplingThreshold")
+              ? jsonObject.getAsJsonPrimitive("samplingThreshold").getAsInt()
+              : DEFAULT_SAMPLING_THRESHOLD;
+      config.samplingTargetRate = jsonObject.has("samplingTargetRate")
+              ? jsonObject.getAsJsonPrimitive("samplingTargetRate").getAsInt()
+              : DEFAULT_SAMPLING_TARGET_RATE;
+      config.samplingKeepModerators = jsonObject.has("samplingKeepModerators")
+              ? jsonObject.getAsJsonPrimitive("samplingKeepModerators").getAsBoolean()
+              : DEFAULT_SAMPLING_KEEP_MODERATORS;
+      config.samplingKeepVips = jsonObject.has("samplingKeepVips")
+              ? jsonObject.getAsJsonPrimitive("samplingKeepVips").getAsBoolean()
+              : DEFAULT_SAMPLING_KEEP_VIPS;
+      config.samplingKeepSubscribers = jsonObject.has("samplingKeepSubscribers")
+              ? jsonObject.getAsJsonPrimitive("samplingKeepSubscribers").getAsBoolean()
+              : DEFAULT_SAMPLING_KEEP_SUBSCRIBERS;
+      config.samplingKeepMentions = jsonObject.has("samplingKeepMentions")
+              ? jsonObject.getAsJsonPrimitive("samplingKeepMentions").getAsBoolean()
+              : DEFAULT_SAMPLING_KEEP_MENTIONS;
+      config.samplingKeepBits = jsonObject.has("samplingKeepBits")
+              ? jsonObject.getAsJsonPrimitive("samplingKeepBits").getAsBoolean()
+              : DEFAULT_SAMPLING_KEEP_BITS;
+
+      config.archiveEnabled = jsonObject.has("archiveEnabled")
+              ? jsonObject.getAsJsonPrimitive("archiveEnabled").getAsBoolean()
+              : DEFAULT_ARCHIVE_ENABLED;
+      config.archiveSegmentSizeMb = jsonObject.has("archiveSegmentSizeMb")
+              ? Math.clamp(jsonObject.getAsJsonPrimitive("archiveSegmentSizeMb").getAsInt(), 1, MAX_ARCHIVE_SEGMENT_SIZE_MB)
+              : DEFAULT_ARCHIVE_SEGMENT_SIZE_MB;
+      config.historySize = jsonObject.has("historySize")
+              ? jsonObject.getAsJsonPrimitive("historySize").getAsInt()
+              : DEFAULT_HISTORY_SIZE;
+      config.broadcastIntervalSeconds = jsonObject.has("broadcastIntervalSeconds")
+              ? jsonObject.getAsJsonPrimitive("broadcastIntervalSeconds").getAsInt()
+              : DEFAULT_BROADCAST_INTERVAL_SECONDS;
+      config.broadcastMessagesPerMinute = jsonObject.has("broadcastMessagesPerMinute")
+              ? jsonObject.getAsJsonPrimitive("broadcastMessagesPerMinute").getAsInt()
+              : DEFAULT_BROADCAST_MESSAGES_PER_MINUTE;
+      config.emotesEnabled = jsonObject.has("emotesEnabled")
+              ? jsonObject.getAsJsonPrimitive("emotesEnabled").getAsBoolean()
+              : DEFAULT_EMOTES_ENABLED;
+      config.emoteUrlTemplate = jsonObject.has("emoteUrlTemplate")
+              ? jsonObject.getAsJsonPrimitive("emoteUrlTemplate").getAsString()
+              : DEFAULT_EMOTE_URL_TEMPLATE;
+      config.emoteDiskCacheEnabled = jsonObject.has("emoteDiskCacheEnabled")
+              ? jsonObject.getAsJsonPrimitive("emoteDiskCacheEnabled").getAsBoolean()
+              : DEFAULT_EMOTE_DISK_CACHE_ENABLED;
+      config.hideDeletedMessages = jsonObject.has("hideDeletedMessages")
+              ? jsonObject.getAsJsonPrimitive("hideDeletedMessages").getAsBoolean()
+              : DEFAULT_HIDE_DELETED_MESSAGES;
+      try {
+        config.eventAlertStyle = jsonObject.has("eventAlertStyle")
+                ? AlertStyle.valueOf(jsonObject.getAsJsonPrimitive("eventAlertStyle").getAsString())
+                : DEFAULT_EVENT_ALERT_STYLE;
+      } catch (IllegalArgumentException e) {
+        config.eventAlertStyle = DEFAULT_EVENT_ALERT_STYLE;
+      }
+      try {
+        config.transport = jsonObject.has("transport")
+                ? TwitchTransport.Type.valueOf(jsonObject.getAsJsonPrimitive("transport").getAsString())
+                : DEFAULT_TRANSPORT;
+      } catch (IllegalArgumentException e) {
+        config.transport = DEFAULT_TRANSPORT;
+      }
+    }
+    return config;
+  }
 
-        this.broadcast = jsonObject.has("broadcast")
-                ? jsonObject.getAsJsonPrimitive("broadcast").getAsBoolean()
-                : DEFAULT_BROADCAST;
+  /**
+   * Saves the current config in the background, several saves in a row are written once.
+   */
+  public static void save() {
+    if (!savePending.getAndSet(true)) {
+      SAVER.execute(() -> {
+        savePending.set(false);
+        write(CURRENT.get());
+      });
+    }
+  }
 
-        this.broadcastPrefix = jsonObject.has("broadcastPrefix")
-                ? jsonObject.getAsJsonPrimitive("broadcastPrefix").getAsString()
-                : DEFAULT_BROADCAST_PREFIX;
+  private static void write(ModConfig config) {
+    String json = config.toJson() + "\n";
+    Path file = configFile();
+    try {
+      Files.createDirectories(file.getParent());
+      // Written next to the config and then moved over it, so that it's never left half written.
+      Path temporary = Files.createTempFile(file.getParent(), "twitchchat", ".json.tmp");
+      try {
+        Files.writeString(temporary, json, StandardCharsets.UTF_8);
+        lastSavedJson = json;
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
       }
     } catch (IOException e) {
-      // Do nothing, we have no file and thus we have to keep everything as default
+      LOG.error("Couldn't save the config to {}", file, e);
     }
   }
 
-  public void save() {
+  private String toJson() {
     JsonObject jsonObject = new JsonObject();
-    jsonObject.addProperty("channel", this.channel);
+    jsonObject.addProperty("channel", getChannel());
+    JsonArray channelsJsonArray = new JsonArray();
+    for (String channel : this.channels) {
+      channelsJsonArray.add(channel);
+    }
+    jsonObject.add("channels", channelsJsonArray);
     jsonObject.addProperty("username", this.username);
     jsonObject.addProperty("oauthKey", this.oauthKey);
     jsonObject.addProperty("prefix", this.prefix);
@@ -124,87 +523,462 @@ public class ModConfig {
       ignoreListJsonArray.add(username);
     }
     jsonObject.add("ignoreList", ignoreListJsonArray);
+    jsonObject.add("highlightKeywords", jsonArray(this.highlightKeywords));
+    jsonObject.add("hiddenKeywords", jsonArray(this.hiddenKeywords));
+    jsonObject.add("redactedKeywords", jsonArray(this.redactedKeywords));
 
     jsonObject.addProperty("twitchWatchSuggestions", this.twitchWatchSuggestions);
     jsonObject.addProperty("broadcast", this.broadcast);
     jsonObject.addProperty("broadcastPrefix", this.broadcastPrefix);
-    try (PrintWriter out = new PrintWriter(configFile)) {
-       out.println(jsonObject.toString());
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+    jsonObject.addProperty("queueCapacity", this.queueCapacity);
+    jsonObject.addProperty("messagesPerTick", this.messagesPerTick);
+    jsonObject.addProperty("overflowPolicy", this.overflowPolicy.name());
+    jsonObject.addProperty("colorCacheSize", this.colorCacheSize);
+    jsonObject.addProperty("colorCacheTtlMinutes", this.colorCacheTtlMinutes);
+    jsonObject.addProperty("serverHost", this.serverHost);
+    jsonObject.addProperty("serverPort", this.serverPort);
+    jsonObject.addProperty("serverTls", this.serverTls);
+    jsonObject.addProperty("sendQueueCapacity", this.sendQueueCapacity);
+    jsonObject.addProperty("autoReconnect", this.autoReconnect);
+    jsonObject.addProperty("logLevel", this.logLevel.name());
+    jsonObject.addProperty("logSampleRate", this.logSampleRate);
+    jsonObject.addProperty("statsOverlay", this.statsOverlay);
+    jsonObject.addProperty("dedupWindowSeconds", this.dedupWindowSeconds);
+    jsonObject.addProperty("samplingThreshold", this.samplingThreshold);
+    jsonObject.addProperty("samplingTargetRate", this.samplingTargetRate);
+    jsonObject.addProperty("samplingKeepModerators", this.samplingKeepModerators);
+    jsonObject.addProperty("samplingKeepVips", this.samplingKeepVips);
+    jsonObject.addProperty("samplingKeepSubscribers", this.samplingKeepSubscribers);
+    jsonObject.addProperty("samplingKeepMentions", this.samplingKeepMentions);
+    jsonObject.addProperty("samplingKeepBits", this.samplingKeepBits);
+    jsonObject.addProperty("archiveEnabled", this.archiveEnabled);
+    jsonObject.addProperty("archiveSegmentSizeMb", this.archiveSegmentSizeMb);
+    jsonObject.addProperty("historySize", this.historySize);
+    jsonObject.addProperty("broadcastIntervalSeconds", this.broadcastIntervalSeconds);
+    jsonObject.addProperty("broadcastMessagesPerMinute", this.broadcastMessagesPerMinute);
+    jsonObject.addProperty("emotesEnabled", this.emotesEnabled);
+    jsonObject.addProperty("emoteUrlTemplate", this.emoteUrlTemplate);
+    jsonObject.addProperty("emoteDiskCacheEnabled", this.emoteDiskCacheEnabled);
+    jsonObject.addProperty("hideDeletedMessages", this.hideDeletedMessages);
+    jsonObject.addProperty("eventAlertStyle", this.eventAlertStyle.name());
+    jsonObject.addProperty("transport", this.transport.name());
+    return jsonObject.toString();
+  }
+
+  private static List<String> stringList(JsonArray jsonArray) {
+    List<String> strings = new ArrayList<>();
+    for (JsonElement jsonElement : jsonArray) {
+      strings.add(jsonElement.getAsString());
+    }
+    return strings;
+  }
+
+  private static JsonArray jsonArray(List<String> strings) {
+    JsonArray jsonArray = new JsonArray();
+    for (String string : strings) {
+      jsonArray.add(string);
     }
+    return jsonArray;
   }
 
   public String getChannel() {
-    return channel;
+    return channels.isEmpty() ? DEFAULT_CHANNEL : channels.get(0);
   }
 
-  public void setChannel(String channel) {
-    this.channel = channel;
+  /**
+   * Makes this the only channel we watch.
+   */
+  public static void setChannel(String channel) {
+    update(config -> config.channels = withChannel(List.of(), channel));
+  }
+
+  public List<String> getChannels() {
+    return channels;
+  }
+
+  public static void addChannel(String channel) {
+    update(config -> config.channels = withChannel(config.channels, channel));
+  }
+
+  public static void removeChannel(String channel) {
+    String channelName = channel.toLowerCase();
+    update(config -> config.channels = config.channels.stream().filter(c -> !c.equals(channelName)).toList());
+  }
+
+  private static List<String> withChannel(List<String> channels, String channel) {
+    String channelName = channel.toLowerCase();
+    if (channelName.equals("") || channels.contains(channelName)) {
+      return channels;
+    }
+    List<String> newChannels = new ArrayList<>(channels);
+    newChannels.add(channelName);
+    return List.copyOf(newChannels);
   }
 
   public String getUsername() {
     return username;
   }
 
-  public void setUsername(String username) {
-    this.username = username;
+  public static void setUsername(String username) {
+    update(config -> config.username = username);
   }
 
   public String getOauthKey() {
     return oauthKey;
   }
 
-  public void setOauthKey(String oauthKey) {
-    this.oauthKey = oauthKey;
+  public static void setOauthKey(String oauthKey) {
+    update(config -> config.oauthKey = oauthKey);
   }
 
   public String getPrefix() {
     return prefix;
   }
 
-  public void setPrefix(String prefix) {
-    this.prefix = prefix;
+  public static void setPrefix(String prefix) {
+    update(config -> config.prefix = prefix);
   }
 
   public String getDateFormat() {
     return dateFormat;
   }
 
-  public void setDateFormat(String dateFormat) {
-    this.dateFormat = dateFormat;
+  public static void setDateFormat(String dateFormat) {
+    update(config -> config.dateFormat = dateFormat);
   }
 
   public List<String> getIgnoreList() {
     return ignoreList;
   }
 
-  public void setIgnoreList(List<String> ignoreList) {
+  public static void setIgnoreList(List<String> ignoreList) {
+    update(config -> config.setIgnoreListOf(ignoreList));
+  }
+
+  private void setIgnoreListOf(List<String> ignoreList) {
     // Force all usernames to be lowercase
-    this.ignoreList = ignoreList.parallelStream().map(String::toLowerCase).collect(Collectors.toList());
+    this.ignoreList = ignoreList.stream().map(String::toLowerCase).toList();
+    // Compiled once per config, instead of for every message.
+    this.ignoreListMatcher = IgnoreListMatcher.compile(this.ignoreList);
+  }
+
+  public boolean isIgnored(String username) {
+    return ignoreListMatcher.matches(username);
+  }
+
+  public List<String> getHighlightKeywords() {
+    return highlightKeywords;
+  }
+
+  public static void setHighlightKeywords(List<String> highlightKeywords) {
+    update(config -> config.setKeywordsOf(highlightKeywords, config.hiddenKeywords, config.redactedKeywords));
+  }
+
+  public List<String> getHiddenKeywords() {
+    return hiddenKeywords;
+  }
+
+  public static void setHiddenKeywords(List<String> hiddenKeywords) {
+    update(config -> config.setKeywordsOf(config.highlightKeywords, hiddenKeywords, config.redactedKeywords));
+  }
+
+  public List<String> getRedactedKeywords() {
+    return redactedKeywords;
+  }
+
+  public static void setRedactedKeywords(List<String> redactedKeywords) {
+    update(config -> config.setKeywordsOf(config.highlightKeywords, config.hiddenKeywords, redactedKeywords));
+  }
+
+  private void setKeywordsOf(List<String> highlightKeywords, List<String> hiddenKeywords, List<String> redactedKeywords) {
+    this.highlightKeywords = List.copyOf(highlightKeywords);
+    this.hiddenKeywords = List.copyOf(hiddenKeywords);
+    this.redactedKeywords = List.copyOf(redactedKeywords);
+    // Like the ignore list, compiled once per config instead of for every message.
+    this.keywordFilter = KeywordFilter.compile(this.highlightKeywords, this.hiddenKeywords, this.redactedKeywords);
+  }
+
+  public KeywordFilter getKeywordFilter() {
+    return keywordFilter;
   }
 
   public boolean areTwitchWatchSuggestionsEnabled() {
     return twitchWatchSuggestions;
   }
 
-  public void setTwitchWatchSuggestions(boolean twitchWatchSuggestions) {
-    this.twitchWatchSuggestions = twitchWatchSuggestions;
+  public static void setTwitchWatchSuggestions(boolean twitchWatchSuggestions) {
+    update(config -> config.twitchWatchSuggestions = twitchWatchSuggestions);
   }
 
   public boolean isBroadcastEnabled() {
     return broadcast;
   }
 
-  public void setBroadcastEnabled(boolean broadcastEnabled) {
-    this.broadcast = broadcastEnabled;
+  public static void setBroadcastEnabled(boolean broadcastEnabled) {
+    update(config -> config.broadcast = broadcastEnabled);
   }
 
   public String getBroadcastPrefix() {
     return broadcastPrefix;
   }
 
-  public void setBroadcastPrefix(String broadcastPrefix) {
-    this.broadcastPrefix = broadcastPrefix;
+  public static void setBroadcastPrefix(String broadcastPrefix) {
+    update(config -> config.broadcastPrefix = broadcastPrefix);
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public static void setQueueCapacity(int queueCapacity) {
+    update(config -> config.queueCapacity = queueCapacity);
+  }
+
+  public int getMessagesPerTick() {
+    return messagesPerTick;
+  }
+
+  public static void setMessagesPerTick(int messagesPerTick) {
+    update(config -> config.messagesPerTick = messagesPerTick);
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    update(config -> config.overflowPolicy = overflowPolicy);
+  }
+
+  public int getColorCacheSize() {
+    return colorCacheSize;
+  }
+
+  public static void setColorCacheSize(int colorCacheSize) {
+    update(config -> config.colorCacheSize = colorCacheSize);
+  }
+
+  public int getColorCacheTtlMinutes() {
+    return colorCacheTtlMinutes;
+  }
+
+  public static void setColorCacheTtlMinutes(int colorCacheTtlMinutes) {
+    update(config -> config.colorCacheTtlMinutes = colorCacheTtlMinutes);
+  }
+
+  public String getServerHost() {
+    return serverHost;
+  }
+
+  public static void setServerHost(String serverHost) {
+    update(config -> config.serverHost = serverHost);
+  }
+
+  public int getServerPort() {
+    return serverPort;
+  }
+
+  public static void setServerPort(int serverPort) {
+    update(config -> config.serverPort = serverPort);
+  }
+
+  public boolean isServerTlsEnabled() {
+    return serverTls;
+  }
+
+  public static void setServerTlsEnabled(boolean serverTls) {
+    update(config -> config.serverTls = serverTls);
+  }
+
+  public int getSendQueueCapacity() {
+    return sendQueueCapacity;
+  }
+
+  public static void setSendQueueCapacity(int sendQueueCapacity) {
+    update(config -> config.sendQueueCapacity = sendQueueCapacity);
+  }
+
+  public boolean isAutoReconnectEnabled() {
+    return autoReconnect;
+  }
+
+  public static void setAutoReconnectEnabled(boolean autoReconnect) {
+    update(config -> config.autoReconnect = autoReconnect);
+  }
+
+  public TwitchLogger.Level getLogLevel() {
+    return logLevel;
+  }
+
+  public static void setLogLevel(TwitchLogger.Level logLevel) {
+    update(config -> config.logLevel = logLevel);
+  }
+
+  public int getLogSampleRate() {
+    return logSampleRate;
+  }
+
+  public static void setLogSampleRate(int logSampleRate) {
+    update(config -> config.logSampleRate = logSampleRate);
+  }
+
+  public boolean isStatsOverlayEnabled() {
+    return statsOverlay;
+  }
+
+  public static void setStatsOverlayEnabled(boolean statsOverlay) {
+    update(config -> config.statsOverlay = statsOverlay);
+  }
+
+  public int getDedupWindowSeconds() {
+    return dedupWindowSeconds;
+  }
+
+  public static void setDedupWindowSeconds(int dedupWindowSeconds) {
+    update(config -> config.dedupWindowSeconds = dedupWindowSeconds);
+  }
+
+  public int getSamplingThreshold() {
+    return samplingThreshold;
+  }
+
+  public static void setSamplingThreshold(int samplingThreshold) {
+    update(config -> config.samplingThreshold = samplingThreshold);
+  }
+
+  public int getSamplingTargetRate() {
+    return samplingTargetRate;
+  }
+
+  public static void setSamplingTargetRate(int samplingTargetRate) {
+    update(config -> config.samplingTargetRate = samplingTargetRate);
+  }
+
+  public boolean isSamplingKeepModerators() {
+    return samplingKeepModerators;
+  }
+
+  public static void setSamplingKeepModerators(boolean samplingKeepModerators) {
+    update(config -> config.samplingKeepModerators = samplingKeepModerators);
+  }
+
+  public boolean isSamplingKeepVips() {
+    return samplingKeepVips;
+  }
+
+  public static void setSamplingKeepVips(boolean samplingKeepVips) {
+    update(config -> config.samplingKeepVips = samplingKeepVips);
+  }
+
+  public boolean isSamplingKeepSubscribers() {
+    return samplingKeepSubscribers;
+  }
+
+  public static void setSamplingKeepSubscribers(boolean samplingKeepSubscribers) {
+    update(config -> config.samplingKeepSubscribers = samplingKeepSubscribers);
+  }
+
+  public boolean isSamplingKeepMentions() {
+    return samplingKeepMentions;
+  }
+
+  public static void setSamplingKeepMentions(boolean samplingKeepMentions) {
+    update(config -> config.samplingKeepMentions = samplingKeepMentions);
+  }
+
+  public boolean isSamplingKeepBits() {
+    return samplingKeepBits;
+  }
+
+  public static void setSamplingKeepBits(boolean samplingKeepBits) {
+    update(config -> config.samplingKeepBits = samplingKeepBits);
+  }
+
+  public boolean isArchiveEnabled() {
+    return archiveEnabled;
+  }
+
+  public static void setArchiveEnabled(boolean archiveEnabled) {
+    update(config -> config.archiveEnabled = archiveEnabled);
+  }
+
+  public int getArchiveSegmentSizeMb() {
+    return archiveSegmentSizeMb;
+  }
+
+  public static void setArchiveSegmentSizeMb(int archiveSegmentSizeMb) {
+    update(config -> config.archiveSegmentSizeMb = archiveSegmentSizeMb);
+  }
+
+  public int getHistorySize() {
+    return historySize;
+  }
+
+  public static void setHistorySize(int historySize) {
+    update(config -> config.historySize = historySize);
+  }
+
+  public boolean isEmotesEnabled() {
+    return emotesEnabled;
+  }
+
+  public static void setEmotesEnabled(boolean emotesEnabled) {
+    update(config -> config.emotesEnabled = emotesEnabled);
+  }
+
+  public String getEmoteUrlTemplate() {
+    return emoteUrlTemplate;
+  }
+
+  public static void setEmoteUrlTemplate(String emoteUrlTemplate) {
+    update(config -> config.emoteUrlTemplate = emoteUrlTemplate);
+  }
+
+  public boolean isEmoteDiskCacheEnabled() {
+    return emoteDiskCacheEnabled;
+  }
+
+  public static void setEmoteDiskCacheEnabled(boolean emoteDiskCacheEnabled) {
+    update(config -> config.emoteDiskCacheEnabled = emoteDiskCacheEnabled);
+  }
+
+  public int getBroadcastIntervalSeconds() {
+    return broadcastIntervalSeconds;
+  }
+
+  public static void setBroadcastIntervalSeconds(int broadcastIntervalSeconds) {
+    update(config -> config.broadcastIntervalSeconds = broadcastIntervalSeconds);
+  }
+
+  public int getBroadcastMessagesPerMinute() {
+    return broadcastMessagesPerMinute;
+  }
+
+  public static void setBroadcastMessagesPerMinute(int broadcastMessagesPerMinute) {
+    update(config -> config.broadcastMessagesPerMinute = broadcastMessagesPerMinute);
+  }
+
+  public boolean isHideDeletedMessages() {
+    return hideDeletedMessages;
+  }
+
+  public static void setHideDeletedMessages(boolean hideDeletedMessages) {
+    update(config -> config.hideDeletedMessages = hideDeletedMessages);
+  }
+
+  public AlertStyle getEventAlertStyle() {
+    return eventAlertStyle;
+  }
+
+  public static void setEventAlertStyle(AlertStyle eventAlertStyle) {
+    update(config -> config.eventAlertStyle = eventAlertStyle);
+  }
+
+  public TwitchTransport.Type getTransport() {
+    return transport;
+  }
+
+  public static void setTransport(TwitchTransport.Type transport) {
+    update(config -> config.transport = transport);
   }
 }
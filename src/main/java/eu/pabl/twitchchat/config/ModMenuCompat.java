@@ -3,6 +3,11 @@ package eu.pabl.twitchchat.config;
 import com.terraformersmc.modmenu.api.ConfigScreenFactory;
 import com.terraformersmc.modmenu.api.ModMenuApi;
 
+import eu.pabl.twitchchat.emotes.Emotes;
+import eu.pabl.twitchchat.twitch_integration.ChatMessageQueue.OverflowPolicy;
+import eu.pabl.twitchchat.twitch_integration.TwitchEvent.AlertStyle;
+import eu.pabl.twitchchat.twitch_integration.TwitchLogger;
+import eu.pabl.twitchchat.twitch_integration.TwitchTransport;
 import java.util.ArrayList;
 
 import me.shedaniel.clothconfig2.api.ConfigBuilder;
@@ -20,7 +25,7 @@ public class ModMenuCompat implements ModMenuApi {
     return (ConfigScreenFactory<Screen>) screen -> {
       ConfigBuilder builder = ConfigBuilder.create();
       builder.setTitle(Text.translatable("config.twitchchat.title"));
-      builder.setSavingRunnable(() -> ModConfig.getConfig().save());
+      builder.setSavingRunnable(() -> ModConfig.save());
 
 
       ConfigEntryBuilder entryBuilder = ConfigEntryBuilder.create();
@@ -28,56 +33,303 @@ public class ModMenuCompat implements ModMenuApi {
       ConfigCategory cosmeticsCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.cosmetics"));
       cosmeticsCategory.addEntry(entryBuilder
               .startStrField(Text.translatable("config.twitchchat.cosmetics.prefix"), ModConfig.getConfig().getPrefix())
-              .setSaveConsumer((s -> ModConfig.getConfig().setPrefix(s)))
+              .setSaveConsumer((s -> ModConfig.setPrefix(s)))
               .setTooltip(Text.translatable("config.twitchchat.cosmetics.prefix.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_PREFIX)
               .build());
       cosmeticsCategory.addEntry(entryBuilder
               .startStrField(Text.translatable("config.twitchchat.cosmetics.dateFormat"), ModConfig.getConfig().getDateFormat())
-              .setSaveConsumer((s -> ModConfig.getConfig().setDateFormat(s)))
+              .setSaveConsumer((s -> ModConfig.setDateFormat(s)))
               .setTooltip(Text.translatable("config.twitchchat.cosmetics.dateFormat.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_DATE_FORMAT)
               .build());
       cosmeticsCategory.addEntry(entryBuilder
               .startStrList(Text.translatable("config.twitchchat.cosmetics.ignorelist"), ModConfig.getConfig().getIgnoreList())
-              .setSaveConsumer((l -> ModConfig.getConfig().setIgnoreList(new ArrayList<>(l))))
+              .setSaveConsumer((l -> ModConfig.setIgnoreList(new ArrayList<>(l))))
               .setTooltip(Text.translatable("config.twitchchat.cosmetics.ignorelist.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_IGNORE_LIST)
               .build());
       cosmeticsCategory.addEntry(entryBuilder
               .startBooleanToggle(Text.translatable("config.twitchchat.cosmetics.twitchWatchSuggestions"), ModConfig.getConfig().areTwitchWatchSuggestionsEnabled())
-              .setSaveConsumer((b -> ModConfig.getConfig().setTwitchWatchSuggestions(b)))
+              .setSaveConsumer((b -> ModConfig.setTwitchWatchSuggestions(b)))
               .setTooltip(Text.translatable("config.twitchchat.cosmetics.twitchWatchSuggestions.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_TWITCH_WATCH_SUGGESTIONS)
               .build());
+      cosmeticsCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.cosmetics.emotes"), ModConfig.getConfig().isEmotesEnabled())
+              .setSaveConsumer((b -> ModConfig.setEmotesEnabled(b)))
+              .setTooltip(Text.translatable("config.twitchchat.cosmetics.emotes.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_EMOTES_ENABLED)
+              .build());
+      cosmeticsCategory.addEntry(entryBuilder
+              .startStrField(Text.translatable("config.twitchchat.cosmetics.emoteUrlTemplate"), ModConfig.getConfig().getEmoteUrlTemplate())
+              .setSaveConsumer((s -> {
+                if (!s.equals(ModConfig.getConfig().getEmoteUrlTemplate())) {
+                  ModConfig.setEmoteUrlTemplate(s);
+                  Emotes.reset();
+                }
+              }))
+              .setTooltip(Text.translatable("config.twitchchat.cosmetics.emoteUrlTemplate.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_EMOTE_URL_TEMPLATE)
+              .build());
+      cosmeticsCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.cosmetics.emoteDiskCache"), ModConfig.getConfig().isEmoteDiskCacheEnabled())
+              .setSaveConsumer((b -> {
+                if (b != ModConfig.getConfig().isEmoteDiskCacheEnabled()) {
+                  ModConfig.setEmoteDiskCacheEnabled(b);
+                  Emotes.reset();
+                }
+              }))
+              .setTooltip(Text.translatable("config.twitchchat.cosmetics.emoteDiskCache.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_EMOTE_DISK_CACHE_ENABLED)
+              .build());
+      cosmeticsCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.cosmetics.hideDeletedMessages"), ModConfig.getConfig().isHideDeletedMessages())
+              .setSaveConsumer((b -> ModConfig.setHideDeletedMessages(b)))
+              .setTooltip(Text.translatable("config.twitchchat.cosmetics.hideDeletedMessages.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_HIDE_DELETED_MESSAGES)
+              .build());
+      cosmeticsCategory.addEntry(entryBuilder
+              .startEnumSelector(Text.translatable("config.twitchchat.cosmetics.eventAlertStyle"), AlertStyle.class, ModConfig.getConfig().getEventAlertStyle())
+              .setSaveConsumer((s -> ModConfig.setEventAlertStyle(s)))
+              .setTooltip(Text.translatable("config.twitchchat.cosmetics.eventAlertStyle.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_EVENT_ALERT_STYLE)
+              .build());
 
       ConfigCategory broadcastCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.broadcast"));
       broadcastCategory.addEntry(entryBuilder
               .startBooleanToggle(Text.translatable("config.twitchchat.broadcast.toggle"), ModConfig.getConfig().isBroadcastEnabled())
-              .setSaveConsumer((b -> ModConfig.getConfig().setBroadcastEnabled(b)))
+              .setSaveConsumer((b -> ModConfig.setBroadcastEnabled(b)))
               .setTooltip(Text.translatable("config.twitchchat.broadcast.toggle.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_BROADCAST)
               .build());
       broadcastCategory.addEntry(entryBuilder
               .startStrField(Text.translatable("config.twitchchat.broadcast.prefix"), ModConfig.getConfig().getBroadcastPrefix())
-              .setSaveConsumer((s -> ModConfig.getConfig().setBroadcastPrefix(s)))
+              .setSaveConsumer((s -> ModConfig.setBroadcastPrefix(s)))
               .setTooltip(Text.translatable("config.twitchchat.broadcast.prefix.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_BROADCAST_PREFIX)
               .build());
+      broadcastCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.broadcast.intervalSeconds"), ModConfig.getConfig().getBroadcastIntervalSeconds())
+              .setSaveConsumer((i -> ModConfig.setBroadcastIntervalSeconds(i)))
+              .setTooltip(Text.translatable("config.twitchchat.broadcast.intervalSeconds.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_BROADCAST_INTERVAL_SECONDS)
+              .setMin(1)
+              .build());
+      broadcastCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.broadcast.messagesPerMinute"), ModConfig.getConfig().getBroadcastMessagesPerMinute())
+              .setSaveConsumer((i -> ModConfig.setBroadcastMessagesPerMinute(i)))
+              .setTooltip(Text.translatable("config.twitchchat.broadcast.messagesPerMinute.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_BROADCAST_MESSAGES_PER_MINUTE)
+              .setMin(1)
+              .build());
+
+      ConfigCategory filtersCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.filters"));
+      filtersCategory.addEntry(entryBuilder
+              .startStrList(Text.translatable("config.twitchchat.filters.highlightKeywords"), ModConfig.getConfig().getHighlightKeywords())
+              .setSaveConsumer((l -> ModConfig.setHighlightKeywords(new ArrayList<>(l))))
+              .setCellErrorSupplier(KeywordFilter::validate)
+              .setTooltip(Text.translatable("config.twitchchat.filters.highlightKeywords.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_HIGHLIGHT_KEYWORDS)
+              .build());
+      filtersCategory.addEntry(entryBuilder
+              .startStrList(Text.translatable("config.twitchchat.filters.hiddenKeywords"), ModConfig.getConfig().getHiddenKeywords())
+              .setSaveConsumer((l -> ModConfig.setHiddenKeywords(new ArrayList<>(l))))
+              .setCellErrorSupplier(KeywordFilter::validate)
+              .setTooltip(Text.translatable("config.twitchchat.filters.hiddenKeywords.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_HIDDEN_KEYWORDS)
+              .build());
+      filtersCategory.addEntry(entryBuilder
+              .startStrList(Text.translatable("config.twitchchat.filters.redactedKeywords"), ModConfig.getConfig().getRedactedKeywords())
+              .setSaveConsumer((l -> ModConfig.setRedactedKeywords(new ArrayList<>(l))))
+              .setCellErrorSupplier(KeywordFilter::validate)
+              .setTooltip(Text.translatable("config.twitchchat.filters.redactedKeywords.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_REDACTED_KEYWORDS)
+              .build());
+
+      ConfigCategory performanceCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.performance"));
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.queueCapacity"), ModConfig.getConfig().getQueueCapacity())
+              .setSaveConsumer((i -> ModConfig.setQueueCapacity(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.queueCapacity.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_QUEUE_CAPACITY)
+              .setMin(1)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.messagesPerTick"), ModConfig.getConfig().getMessagesPerTick())
+              .setSaveConsumer((i -> ModConfig.setMessagesPerTick(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.messagesPerTick.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_MESSAGES_PER_TICK)
+              .setMin(1)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startEnumSelector(Text.translatable("config.twitchchat.performance.overflowPolicy"), OverflowPolicy.class, ModConfig.getConfig().getOverflowPolicy())
+              .setSaveConsumer((p -> ModConfig.setOverflowPolicy(p)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.overflowPolicy.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_OVERFLOW_POLICY)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.dedupWindowSeconds"), ModConfig.getConfig().getDedupWindowSeconds())
+              .setSaveConsumer((i -> ModConfig.setDedupWindowSeconds(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.dedupWindowSeconds.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_DEDUP_WINDOW_SECONDS)
+              .setMin(0)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.colorCacheSize"), ModConfig.getConfig().getColorCacheSize())
+              .setSaveConsumer((i -> ModConfig.setColorCacheSize(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.colorCacheSize.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_COLOR_CACHE_SIZE)
+              .setMin(1)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.colorCacheTtlMinutes"), ModConfig.getConfig().getColorCacheTtlMinutes())
+              .setSaveConsumer((i -> ModConfig.setColorCacheTtlMinutes(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.colorCacheTtlMinutes.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_COLOR_CACHE_TTL_MINUTES)
+              .setMin(0)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.sendQueueCapacity"), ModConfig.getConfig().getSendQueueCapacity())
+              .setSaveConsumer((i -> ModConfig.setSendQueueCapacity(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.sendQueueCapacity.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SEND_QUEUE_CAPACITY)
+              .setMin(0)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startEnumSelector(Text.translatable("config.twitchchat.performance.logLevel"), TwitchLogger.Level.class, ModConfig.getConfig().getLogLevel())
+              .setSaveConsumer((l -> ModConfig.setLogLevel(l)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.logLevel.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_LOG_LEVEL)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.performance.logSampleRate"), ModConfig.getConfig().getLogSampleRate())
+              .setSaveConsumer((i -> ModConfig.setLogSampleRate(i)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.logSampleRate.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_LOG_SAMPLE_RATE)
+              .setMin(1)
+              .build());
+      performanceCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.performance.statsOverlay"), ModConfig.getConfig().isStatsOverlayEnabled())
+              .setSaveConsumer((b -> ModConfig.setStatsOverlayEnabled(b)))
+              .setTooltip(Text.translatable("config.twitchchat.performance.statsOverlay.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_STATS_OVERLAY)
+              .build());
+
+      ConfigCategory samplingCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.sampling"));
+      samplingCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.sampling.samplingThreshold"), ModConfig.getConfig().getSamplingThreshold())
+              .setSaveConsumer((i -> ModConfig.setSamplingThreshold(i)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingThreshold.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_THRESHOLD)
+              .setMin(0)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.sampling.samplingTargetRate"), ModConfig.getConfig().getSamplingTargetRate())
+              .setSaveConsumer((i -> ModConfig.setSamplingTargetRate(i)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingTargetRate.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_TARGET_RATE)
+              .setMin(1)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.sampling.samplingKeepModerators"), ModConfig.getConfig().isSamplingKeepModerators())
+              .setSaveConsumer((b -> ModConfig.setSamplingKeepModerators(b)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingKeepModerators.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_KEEP_MODERATORS)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.sampling.samplingKeepVips"), ModConfig.getConfig().isSamplingKeepVips())
+              .setSaveConsumer((b -> ModConfig.setSamplingKeepVips(b)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingKeepVips.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_KEEP_VIPS)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.sampling.samplingKeepSubscribers"), ModConfig.getConfig().isSamplingKeepSubscribers())
+              .setSaveConsumer((b -> ModConfig.setSamplingKeepSubscribers(b)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingKeepSubscribers.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_KEEP_SUBSCRIBERS)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.sampling.samplingKeepMentions"), ModConfig.getConfig().isSamplingKeepMentions())
+              .setSaveConsumer((b -> ModConfig.setSamplingKeepMentions(b)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingKeepMentions.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_KEEP_MENTIONS)
+              .build());
+      samplingCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.sampling.samplingKeepBits"), ModConfig.getConfig().isSamplingKeepBits())
+              .setSaveConsumer((b -> ModConfig.setSamplingKeepBits(b)))
+              .setTooltip(Text.translatable("config.twitchchat.sampling.samplingKeepBits.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SAMPLING_KEEP_BITS)
+              .build());
+
+      ConfigCategory archiveCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.archive"));
+      archiveCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.archive.archiveEnabled"), ModConfig.getConfig().isArchiveEnabled())
+              .setSaveConsumer((b -> ModConfig.setArchiveEnabled(b)))
+              .setTooltip(Text.translatable("config.twitchchat.archive.archiveEnabled.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_ARCHIVE_ENABLED)
+              .build());
+      archiveCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.archive.archiveSegmentSizeMb"), ModConfig.getConfig().getArchiveSegmentSizeMb())
+              .setSaveConsumer((i -> ModConfig.setArchiveSegmentSizeMb(i)))
+              .setTooltip(Text.translatable("config.twitchchat.archive.archiveSegmentSizeMb.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_ARCHIVE_SEGMENT_SIZE_MB)
+              .setMin(1)
+              .setMax(ModConfig.MAX_ARCHIVE_SEGMENT_SIZE_MB)
+              .build());
+      archiveCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.archive.historySize"), ModConfig.getConfig().getHistorySize())
+              .setSaveConsumer((i -> ModConfig.setHistorySize(i)))
+              .setTooltip(Text.translatable("config.twitchchat.archive.historySize.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_HISTORY_SIZE)
+              .setMin(0)
+              .build());
 
       ConfigCategory credentialsCategory = builder.getOrCreateCategory(Text.translatable("config.twitchchat.category.credentials"));
       credentialsCategory.addEntry(entryBuilder
               .startStrField(Text.translatable("config.twitchchat.credentials.username"), ModConfig.getConfig().getUsername())
-              .setSaveConsumer((s -> ModConfig.getConfig().setUsername(s)))
+              .setSaveConsumer((s -> ModConfig.setUsername(s)))
               .setTooltip(Text.translatable("config.twitchchat.credentials.username.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_USERNAME)
               .build());
       credentialsCategory.addEntry(entryBuilder
               .startStrField(Text.translatable("config.twitchchat.credentials.oauthKey"), ModConfig.getConfig().getOauthKey())
-              .setSaveConsumer((s -> ModConfig.getConfig().setOauthKey(s)))
+              .setSaveConsumer((s -> ModConfig.setOauthKey(s)))
               .setTooltip(Text.translatable("config.twitchchat.credentials.oauthKey.tooltip"))
               .setDefaultValue(ModConfig.DEFAULT_OAUTH_KEY)
               .build());
+      credentialsCategory.addEntry(entryBuilder
+              .startStrField(Text.translatable("config.twitchchat.credentials.serverHost"), ModConfig.getConfig().getServerHost())
+              .setSaveConsumer((s -> ModConfig.setServerHost(s)))
+              .setTooltip(Text.translatable("config.twitchchat.credentials.serverHost.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SERVER_HOST)
+              .build());
+      credentialsCategory.addEntry(entryBuilder
+              .startIntField(Text.translatable("config.twitchchat.credentials.serverPort"), ModConfig.getConfig().getServerPort())
+              .setSaveConsumer((i -> ModConfig.setServerPort(i)))
+              .setTooltip(Text.translatable("config.twitchchat.credentials.serverPort.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SERVER_PORT)
+              .setMin(1)
+              .setMax(65535)
+              .build());
+      credentialsCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.credentials.serverTls"), ModConfig.getConfig().isServerTlsEnabled())
+              .setSaveConsumer((b -> ModConfig.setServerTlsEnabled(b)))
+              .setTooltip(Text.translatable("config.twitchchat.credentials.serverTls.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_SERVER_TLS)
+              .build());
+      credentialsCategory.addEntry(entryBuilder
+              .startBooleanToggle(Text.translatable("config.twitchchat.credentials.autoReconnect"), ModConfig.getConfig().isAutoReconnectEnabled())
+              .setSaveConsumer((b -> ModConfig.setAutoReconnectEnabled(b)))
+              .setTooltip(Text.translatable("config.twitchchat.credentials.autoReconnect.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_AUTO_RECONNECT)
+              .build());
+      credentialsCategory.addEntry(entryBuilder
+              .startEnumSelector(Text.translatable("config.twitchchat.credentials.transport"), TwitchTransport.Type.class, ModConfig.getConfig().getTransport())
+              .setSaveConsumer((t -> ModConfig.setTransport(t)))
+              .setTooltip(Text.translatable("config.twitchchat.credentials.transport.tooltip"))
+              .setDefaultValue(ModConfig.DEFAULT_TRANSPORT)
+              .build());
 
       return builder.build();
     };
@@ -0,0 +1,56 @@
+package eu.pabl.twitchchat.emotes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Keeps the emotes fetched from another source on disk, so that they're only downloaded once and not every session.
+ */
+public class CachingEmoteSource implements EmoteSource {
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+  private final EmoteSource source;
+  private final Path directory;
+
+  public CachingEmoteSource(EmoteSource source, Path directory) {
+    this.source = source;
+    this.directory = directory;
+  }
+
+  @Override
+  public byte[] fetch(String emoteId) throws IOException {
+    // Emote ids are numbers or things like emotesv2_0123abc, but they come from the network.
+    Path file = directory.resolve(emoteId.replaceAll("[^A-Za-z0-9_-]", "_") + ".png");
+    if (Files.isRegularFile(file)) {
+      byte[] cached = Files.readAllBytes(file);
+      // GIFs cached from the "default" emote URL are fetched again.
+      if (isPng(cached)) {
+        return cached;
+      }
+    }
+
+    byte[] image = source.fetch(emoteId);
+    if (!isPng(image)) {
+      // Can't be shown anyway, not worth keeping.
+      return image;
+    }
+    Files.createDirectories(directory);
+    // Written to a temporary file first, so that a half written image is never read back.
+    Path temporary = Files.createTempFile(directory, "emote", ".tmp");
+    try {
+      Files.write(temporary, image);
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return image;
+  }
+
+  private static boolean isPng(byte[] image) {
+    return image.length >= PNG_SIGNATURE.length
+        && Arrays.equals(image, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0, PNG_SIGNATURE.length);
+  }
+}
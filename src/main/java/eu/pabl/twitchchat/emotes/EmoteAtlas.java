@@ -0,0 +1,271 @@
+package eu.pabl.twitchchat.emotes;
+
+import eu.pabl.twitchchat.twitch_integration.TwitchLogger;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.util.Identifier;
+
+/**
+ * Every emote shown in the chat lives in a slot of one texture, so that a line full of emotes is still drawn in one
+ * go. Slots are reused least recently used first once the atlas is full.
+ *
+ * Each emote gets its own character from the supplementary private use area, which {@link EmoteFont} draws from the
+ * emote's slot. The slot is taken as soon as the emote is first seen and stays transparent until the image has been
+ * fetched and decoded on the loader threads, so nothing ever waits for an emote. Only used from the client thread.
+ *
+ * The font keeps the glyphs it has drawn, so a character keeps drawing its slot for as long as it's in the chat. A slot
+ * is only given to another emote once the chat lines that showed it are gone, before that new emotes are left as text.
+ */
+public class EmoteAtlas {
+  public static final Identifier TEXTURE_ID = Identifier.of("twitchchat", "emote_atlas");
+  public static final int SLOT_SIZE = 32;
+
+  private static final int ATLAS_SIZE = 512;
+  private static final int SLOTS_PER_ROW = ATLAS_SIZE / SLOT_SIZE;
+  private static final int SLOT_COUNT = SLOTS_PER_ROW * SLOTS_PER_ROW;
+  private static final int FIRST_CODE_POINT = 0xF0000;
+  private static final int LAST_CODE_POINT = 0xFFFFD;
+  private static final int LOADER_THREADS = 2;
+  // How many lines the chat keeps, older ones are dropped.
+  private static final int CHAT_HISTORY_LINES = 100;
+
+  private static final TwitchLogger LOG = TwitchLogger.get("emotes");
+
+  public static class Slot {
+    private final int index;
+    private final int codePoint;
+    private final String emoteId;
+    // The number of chat lines added before this emote was last shown.
+    private long lastShownLine;
+
+    private Slot(int index, int codePoint, String emoteId) {
+      this.index = index;
+      this.codePoint = codePoint;
+      this.emoteId = emoteId;
+    }
+
+    public int getCodePoint() {
+      return codePoint;
+    }
+
+    public float getMinU() {
+      return (float) (index % SLOTS_PER_ROW * SLOT_SIZE) / ATLAS_SIZE;
+    }
+
+    public float getMaxU() {
+      return getMinU() + (float) SLOT_SIZE / ATLAS_SIZE;
+    }
+
+    public float getMinV() {
+      return (float) (index / SLOTS_PER_ROW * SLOT_SIZE) / ATLAS_SIZE;
+    }
+
+    public float getMaxV() {
+      return getMinV() + (float) SLOT_SIZE / ATLAS_SIZE;
+    }
+  }
+
+  private final EmoteSource source;
+  private final ExecutorService loader;
+  // Access order, the least recently shown emote is evicted first.
+  private final LinkedHashMap<String, Slot> slotsByEmote = new LinkedHashMap<>(64, 0.75f, true);
+  private final Int2ObjectMap<Slot> slotsByCodePoint = new Int2ObjectOpenHashMap<>();
+  // Emotes that couldn't be loaded are shown as text for the rest of the session.
+  private final Set<String> failedEmotes = new HashSet<>();
+  // The slots of those emotes, free again once they're out of the chat.
+  private final ArrayDeque<Slot> failedSlots = new ArrayDeque<>();
+  private long linesAdded;
+  private int usedSlots;
+  private int nextCodePoint = FIRST_CODE_POINT;
+
+  private NativeImage image;
+  private NativeImageBackedTexture texture;
+  private boolean dirty;
+
+  public EmoteAtlas(EmoteSource source) {
+    this.source = source;
+    this.loader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "Twitch Chat emote loader");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Finds the emote's slot, taking one (and starting to load the emote) if it isn't in the atlas.
+   * @return null if the emote couldn't be loaded before, or every slot is still in the chat.
+   */
+  public Slot get(String emoteId) {
+    Slot slot = slotsByEmote.get(emoteId);
+    if (slot != null) {
+      slot.lastShownLine = linesAdded;
+      return slot;
+    }
+    if (failedEmotes.contains(emoteId)) {
+      return null;
+    }
+
+    createTexture();
+    int index;
+    if (usedSlots < SLOT_COUNT) {
+      index = usedSlots++;
+    } else if (!failedSlots.isEmpty() && isOutOfChat(failedSlots.peek())) {
+      index = free(failedSlots.poll());
+    } else {
+      // The least recently shown emote, if even that one is still in the chat then all of them are.
+      Iterator<Slot> eldest = slotsByEmote.values().iterator();
+      Slot evicted = eldest.hasNext() ? eldest.next() : null;
+      if (evicted == null || !isOutOfChat(evicted)) {
+        return null;
+      }
+      eldest.remove();
+      index = free(evicted);
+    }
+
+    slot = new Slot(index, nextCodePoint(), emoteId);
+    slot.lastShownLine = linesAdded;
+    slotsByEmote.put(emoteId, slot);
+    slotsByCodePoint.put(slot.codePoint, slot);
+    load(slot);
+    return slot;
+  }
+
+  /**
+   * Counts a line added to the chat, which pushes the oldest one out once the chat is full.
+   */
+  public void lineAdded() {
+    linesAdded++;
+  }
+
+  public Slot getByCodePoint(int codePoint) {
+    return slotsByCodePoint.get(codePoint);
+  }
+
+  public IntSet getCodePoints() {
+    return new IntOpenHashSet(slotsByCodePoint.keySet());
+  }
+
+  /**
+   * Sends the emotes that finished loading to the GPU, all at once. Called once per tick.
+   */
+  public void uploadIfDirty() {
+    if (dirty) {
+      dirty = false;
+      texture.upload();
+    }
+  }
+
+  public void close() {
+    loader.shutdownNow();
+    if (texture != null) {
+      MinecraftClient.getInstance().getTextureManager().destroyTexture(TEXTURE_ID);
+      texture = null;
+      image = null;
+    }
+  }
+
+  private int nextCodePoint() {
+    // After 65k emotes in one session the characters are reused, by then the old ones are long gone from the chat.
+    int codePoint = nextCodePoint;
+    nextCodePoint = codePoint == LAST_CODE_POINT ? FIRST_CODE_POINT : codePoint + 1;
+    return codePoint;
+  }
+
+  private void createTexture() {
+    if (texture == null) {
+      image = new NativeImage(ATLAS_SIZE, ATLAS_SIZE, true);
+      image.fillRect(0, 0, ATLAS_SIZE, ATLAS_SIZE, 0);
+      texture = new NativeImageBackedTexture(image);
+      MinecraftClient.getInstance().getTextureManager().registerTexture(TEXTURE_ID, texture);
+    }
+  }
+
+  private boolean isOutOfChat(Slot slot) {
+    return linesAdded - slot.lastShownLine > CHAT_HISTORY_LINES;
+  }
+
+  /**
+   * Takes the slot away from its emote's character and clears it for the next one.
+   * @return the slot's index.
+   */
+  private int free(Slot slot) {
+    slotsByCodePoint.remove(slot.codePoint);
+    image.fillRect(slot.index % SLOTS_PER_ROW * SLOT_SIZE, slot.index / SLOTS_PER_ROW * SLOT_SIZE, SLOT_SIZE, SLOT_SIZE,
+        0);
+    dirty = true;
+    return slot.index;
+  }
+
+  private void load(Slot slot) {
+    MinecraftClient client = MinecraftClient.getInstance();
+    try {
+      loader.execute(() -> {
+        NativeImage emote;
+        try {
+          emote = decode(source.fetch(slot.emoteId));
+        } catch (IOException e) {
+          LOG.warn("Couldn't load emote {}: {}", slot.emoteId, e.getMessage());
+          client.execute(() -> onFailed(slot));
+          return;
+        }
+        client.execute(() -> onLoaded(slot, emote));
+      });
+    } catch (RejectedExecutionException e) {
+      // The atlas was closed.
+    }
+  }
+
+  private static NativeImage decode(byte[] bytes) throws IOException {
+    try (NativeImage decoded = NativeImage.read(new ByteArrayInputStream(bytes))) {
+      NativeImage scaled = new NativeImage(SLOT_SIZE, SLOT_SIZE, true);
+      scaled.fillRect(0, 0, SLOT_SIZE, SLOT_SIZE, 0);
+      // Emotes can be wider than they're tall, keep their aspect ratio inside the square slot.
+      int size = Math.max(decoded.getWidth(), decoded.getHeight());
+      int width = decoded.getWidth() * SLOT_SIZE / size;
+      int height = decoded.getHeight() * SLOT_SIZE / size;
+      try (NativeImage resized = new NativeImage(width, height, true)) {
+        decoded.resizeSubRectTo(0, 0, decoded.getWidth(), decoded.getHeight(), resized);
+        resized.copyRect(scaled, 0, 0, (SLOT_SIZE - width) / 2, (SLOT_SIZE - height) / 2, width, height, false, false);
+      }
+      return scaled;
+    }
+  }
+
+  private void onFailed(Slot slot) {
+    failedEmotes.add(slot.emoteId);
+    if (texture == null || slotsByEmote.get(slot.emoteId) != slot) {
+      return;
+    }
+    // From now on the emote is left as text, but its character stays transparent in the lines that already have it.
+    slotsByEmote.remove(slot.emoteId);
+    failedSlots.add(slot);
+  }
+
+  private void onLoaded(Slot slot, NativeImage emote) {
+    try (emote) {
+      // The slot may have been given to another emote while this one was loading.
+      if (texture == null || slotsByEmote.get(slot.emoteId) != slot) {
+        return;
+      }
+      emote.copyRect(image, 0, 0, slot.index % SLOTS_PER_ROW * SLOT_SIZE, slot.index / SLOTS_PER_ROW * SLOT_SIZE,
+          SLOT_SIZE, SLOT_SIZE, false, false);
+      dirty = true;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package eu.pabl.twitchchat.emotes;
+
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.function.Function;
+import net.minecraft.client.font.BakedGlyph;
+import net.minecraft.client.font.Font;
+import net.minecraft.client.font.Glyph;
+import net.minecraft.client.font.RenderableGlyph;
+import net.minecraft.client.font.TextRenderLayerSet;
+
+/**
+ * Draws the characters given to the emotes by the {@link EmoteAtlas} as the emotes' slots of the atlas, so emotes
+ * are laid out and rendered like any other character in the chat.
+ */
+public class EmoteFont implements Font {
+  // Emotes are drawn a bit taller than the letters, like in the Twitch chat.
+  private static final float SIZE = 9;
+  private static final float ADVANCE = SIZE + 1;
+  private static final TextRenderLayerSet LAYERS = TextRenderLayerSet.of(EmoteAtlas.TEXTURE_ID);
+
+  private final EmoteAtlas atlas;
+
+  public EmoteFont(EmoteAtlas atlas) {
+    this.atlas = atlas;
+  }
+
+  @Override
+  public Glyph getGlyph(int codePoint) {
+    EmoteAtlas.Slot slot = atlas.getByCodePoint(codePoint);
+    if (slot == null) {
+      return null;
+    }
+    BakedGlyph baked = new BakedGlyph(LAYERS, slot.getMinU(), slot.getMaxU(), slot.getMinV(), slot.getMaxV(),
+        0, SIZE, -1, SIZE - 1);
+    return new Glyph() {
+      @Override
+      public float getAdvance() {
+        return ADVANCE;
+      }
+
+      @Override
+      public BakedGlyph bake(Function<RenderableGlyph, BakedGlyph> glyphRendererGetter) {
+        return baked;
+      }
+    };
+  }
+
+  @Override
+  public IntSet getProvidedGlyphs() {
+    return atlas.getCodePoints();
+  }
+}
@@ -0,0 +1,13 @@
+package eu.pabl.twitchchat.emotes;
+
+import java.io.IOException;
+
+/**
+ * Where emote images come from. Called from the emote loader threads, never from the render thread.
+ */
+public interface EmoteSource {
+  /**
+   * @return the encoded (PNG) image of the emote.
+   */
+  byte[] fetch(String emoteId) throws IOException;
+}
@@ -0,0 +1,100 @@
+package eu.pabl.twitchchat.emotes;
+
+import eu.pabl.twitchchat.config.ModConfig;
+import java.util.List;
+import java.util.Set;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.font.Font;
+import net.minecraft.client.font.FontFilterType;
+import net.minecraft.client.font.FontStorage;
+import net.minecraft.client.texture.TextureManager;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.Identifier;
+
+/**
+ * Turns emotes into text that renders as the emote, through a font of our own backed by the {@link EmoteAtlas}.
+ * Only used from the client thread.
+ */
+public final class Emotes {
+  public static final Identifier FONT_ID = Identifier.of("twitchchat", "emotes");
+
+  private static EmoteAtlas atlas;
+  private static FontStorage fontStorage;
+
+  private Emotes() {
+  }
+
+  /**
+   * @param name the text the emote replaces, shown when hovering it.
+   * @return null if emotes are disabled or this one couldn't be loaded, to leave its name as text.
+   */
+  public static Text text(String emoteId, String name) {
+    if (!ModConfig.getConfig().isEmotesEnabled()) {
+      return null;
+    }
+    EmoteAtlas.Slot slot = getAtlas().get(emoteId);
+    if (slot == null) {
+      return null;
+    }
+    // White so that the emote isn't tinted by the colour of /me messages.
+    return Text.literal(Character.toString(slot.getCodePoint())).styled(style -> style
+        .withFont(FONT_ID)
+        .withColor(Formatting.WHITE)
+        .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal(name))));
+  }
+
+  /**
+   * The font storage for {@link #FONT_ID}, looked up by the font manager.
+   */
+  public static FontStorage getFontStorage(TextureManager textureManager) {
+    if (fontStorage == null) {
+      fontStorage = new FontStorage(textureManager, FONT_ID);
+      fontStorage.setFonts(List.of(new Font.FontFilterPair(new EmoteFont(getAtlas()), FontFilterType.FilterMap.NO_FILTER)),
+          Set.of());
+    }
+    return fontStorage;
+  }
+
+  /**
+   * Told about every line we add to the chat, to know when the emotes of old lines have scrolled out of it.
+   */
+  public static void lineAdded() {
+    if (atlas != null) {
+      atlas.lineAdded();
+    }
+  }
+
+  public static void tick() {
+    if (atlas != null) {
+      atlas.uploadIfDirty();
+    }
+  }
+
+  /**
+   * Forgets every emote, for when the emote settings change.
+   */
+  public static void reset() {
+    if (atlas != null) {
+      atlas.close();
+      atlas = null;
+    }
+    if (fontStorage != null) {
+      fontStorage.close();
+      fontStorage = null;
+    }
+  }
+
+  private static EmoteAtlas getAtlas() {
+    if (atlas == null) {
+      EmoteSource source = new UrlEmoteSource(ModConfig.getConfig().getEmoteUrlTemplate());
+      if (ModConfig.getConfig().isEmoteDiskCacheEnabled()) {
+        source = new CachingEmoteSource(source,
+            FabricLoader.getInstance().getGameDir().resolve("twitchchat").resolve("emote-cache"));
+      }
+      atlas = new EmoteAtlas(source);
+    }
+    return atlas;
+  }
+}
@@ -0,0 +1,58 @@
+package eu.pabl.twitchchat.emotes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Fetches emotes from a URL template where "{id}" is replaced by the emote id. The Twitch CDN by default, but a
+ * "file:" template reads them from a local directory instead (e.g. file:///tmp/emotes/{id}.png), for testing.
+ */
+public class UrlEmoteSource implements EmoteSource {
+  // "static" rather than "default", which is a GIF for animated emotes and Minecraft can only decode PNGs.
+  public static final String TWITCH_CDN_TEMPLATE = "https://static-cdn.jtvnw.net/emoticons/v2/{id}/static/dark/1.0";
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final String template;
+  private final HttpClient httpClient;
+
+  public UrlEmoteSource(String template) {
+    this.template = template;
+    this.httpClient = HttpClient.newBuilder()
+        .connectTimeout(TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+  }
+
+  @Override
+  public byte[] fetch(String emoteId) throws IOException {
+    URI uri;
+    try {
+      uri = URI.create(template.replace("{id}", emoteId));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid emote URL template: " + template, e);
+    }
+
+    if ("file".equals(uri.getScheme())) {
+      return Files.readAllBytes(Path.of(uri));
+    }
+
+    HttpRequest request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+    try {
+      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      if (response.statusCode() != 200) {
+        throw new IOException("Got HTTP " + response.statusCode() + " for " + uri);
+      }
+      return response.body();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while fetching " + uri, e);
+    }
+  }
+}
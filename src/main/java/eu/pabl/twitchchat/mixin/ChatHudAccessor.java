@@ -0,0 +1,19 @@
+package eu.pabl.twitchchat.mixin;
+
+import java.util.List;
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+// Lets collapsed messages update their line in the chat instead of adding a new one.
+@Mixin(ChatHud.class)
+public interface ChatHudAccessor {
+  @Accessor("messages")
+  List<ChatHudLine> twitchchat$getMessages();
+
+  // Re-wraps every line, needed after one of them has changed.
+  @Invoker("refresh")
+  void twitchchat$refresh();
+}
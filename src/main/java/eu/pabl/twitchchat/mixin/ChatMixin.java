@@ -2,13 +2,13 @@ package eu.pabl.twitchchat.mixin;
 
 import eu.pabl.twitchchat.TwitchChatMod;
 import eu.pabl.twitchchat.config.ModConfig;
-import eu.pabl.twitchchat.twitch_integration.CalculateMinecraftColor;
-import java.util.Date;
+import eu.pabl.twitchchat.twitch_integration.MessageEmotes;
+import eu.pabl.twitchchat.twitch_integration.TwitchMessage;
+import eu.pabl.twitchchat.twitch_integration.UserColorCache;
 import net.fabricmc.fabric.impl.client.indigo.IndigoMixinConfigPlugin;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.ChatScreen;
 import net.minecraft.text.Text;
-import net.minecraft.text.TextColor;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -33,24 +33,17 @@ public class ChatMixin {
       if (text.startsWith(prefix)) {
         if (TwitchChatMod.bot != null && TwitchChatMod.bot.isConnected()) {
           String textWithoutPrefix = text.substring(text.indexOf(prefix) + prefix.length());
-          TwitchChatMod.bot.sendMessage(textWithoutPrefix); // Send the message to the Twitch IRC Chat
-
-          Date currentTime = new Date();
-          String formattedTime = TwitchChatMod.formatDateTwitch(currentTime);
-
-          String username = TwitchChatMod.bot.getUsername();
-          TextColor userColor;
-          if (TwitchChatMod.bot.isFormattingColorCached(username)) {
-            userColor = TwitchChatMod.bot.getFormattingColor(username);
-          } else {
-            userColor = CalculateMinecraftColor.getDefaultUserColor(username);
-            TwitchChatMod.bot.putFormattingColor(username, userColor);
-          }
+          // Send the message to the Twitch IRC Chat, it isn't shown if it was dropped because of the rate limits.
+          if (TwitchChatMod.bot.sendMessage(textWithoutPrefix)) {
+            String username = TwitchChatMod.bot.getUsername();
 
-          boolean isMeMessage = textWithoutPrefix.startsWith("/me");
+            boolean isMeMessage = textWithoutPrefix.startsWith("/me");
 
-          // Add the message to the Minecraft Chat
-          TwitchChatMod.addTwitchMessage(formattedTime, username, isMeMessage ? textWithoutPrefix.substring(4) : textWithoutPrefix, userColor, isMeMessage);
+            // Add the message to the Minecraft Chat
+            TwitchChatMod.addTwitchMessage(new TwitchMessage(System.currentTimeMillis(), TwitchChatMod.bot.getPrimaryChannel(),
+                username, isMeMessage ? textWithoutPrefix.substring(4) : textWithoutPrefix, UserColorCache.NO_COLOR,
+                isMeMessage ? TwitchMessage.FLAG_ME : 0, null, MessageEmotes.NONE));
+          }
           MinecraftClient.getInstance().inGameHud.getChatHud().addToMessageHistory(text);
           info.cancel();
         } else {
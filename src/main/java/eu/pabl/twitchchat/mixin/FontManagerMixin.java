@@ -0,0 +1,26 @@
+package eu.pabl.twitchchat.mixin;
+
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import eu.pabl.twitchchat.emotes.Emotes;
+import net.minecraft.client.font.FontManager;
+import net.minecraft.client.font.FontStorage;
+import net.minecraft.client.texture.TextureManager;
+import net.minecraft.util.Identifier;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+
+// The emote font isn't a resource pack font, its glyphs come and go with the emotes in the atlas.
+@Mixin(FontManager.class)
+public class FontManagerMixin {
+  @Shadow
+  @Final
+  private TextureManager textureManager;
+
+  // Looked up for every glyph that's drawn, so unlike a cancellable @Inject this doesn't allocate anything.
+  @ModifyReturnValue(method = "getStorage", at = @At("RETURN"))
+  private FontStorage getEmoteStorage(FontStorage storage, Identifier id) {
+    return Emotes.FONT_ID.equals(id) ? Emotes.getFontStorage(textureManager) : storage;
+  }
+}
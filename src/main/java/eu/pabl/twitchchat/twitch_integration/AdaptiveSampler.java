@@ -0,0 +1,85 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Thins out channels that are too fast to read. Once a channel goes over the threshold rate, priority messages are
+ * always shown and the rest are let through at the target rate. Rates are measured per channel.
+ */
+public class AdaptiveSampler {
+  private static class ChannelState {
+    long secondStart;
+    int countThisSecond;
+    // Messages per second, smoothed over the last few seconds.
+    double rate;
+    boolean sampling;
+    double tokens;
+    long lastRefill;
+  }
+
+  private final Map<String, ChannelState> channels = new HashMap<>();
+  private final BiConsumer<String, Boolean> onSamplingChanged;
+
+  /**
+   * @param onSamplingChanged told (channel, sampling) whenever a channel starts or stops being sampled.
+   */
+  public AdaptiveSampler(BiConsumer<String, Boolean> onSamplingChanged) {
+    this.onSamplingChanged = onSamplingChanged;
+  }
+
+  /**
+   * @param threshold messages per second above which the channel is sampled, 0 to never sample.
+   * @param targetRate messages per second shown from a sampled channel, on top of the priority ones.
+   * @return whether the message should be shown.
+   */
+  public synchronized boolean sample(String channel, boolean priority, long now, int threshold, int targetRate) {
+    ChannelState state = channels.computeIfAbsent(channel, c -> new ChannelState());
+    updateRate(state, now);
+    state.countThisSecond++;
+
+    boolean shouldSample = threshold > 0 && state.rate > threshold;
+    if (shouldSample != state.sampling) {
+      state.sampling = shouldSample;
+      state.tokens = targetRate;
+      state.lastRefill = now;
+      onSamplingChanged.accept(channel, shouldSample);
+    }
+
+    if (!state.sampling || priority) {
+      return true;
+    }
+    state.tokens = Math.min(targetRate, state.tokens + (now - state.lastRefill) * targetRate / 1000.0);
+    state.lastRefill = now;
+    if (state.tokens >= 1) {
+      state.tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized boolean isSampling(String channel) {
+    ChannelState state = channels.get(channel);
+    return state != null && state.sampling;
+  }
+
+  public synchronized void remove(String channel) {
+    channels.remove(channel);
+  }
+
+  private static void updateRate(ChannelState state, long now) {
+    long elapsed = now - state.secondStart;
+    if (elapsed < 1000) {
+      return;
+    }
+    // Seconds without any messages count as 0 messages per second.
+    long seconds = elapsed / 1000;
+    state.rate = (state.rate + state.countThisSecond) / 2;
+    for (long i = 1; i < seconds && state.rate > 0.01; i++) {
+      state.rate /= 2;
+    }
+    state.countThisSecond = 0;
+    state.secondStart = now - elapsed % 1000;
+  }
+}
@@ -0,0 +1,8 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+/**
+ * A chat message as it was written to the archive.
+ * @param color the username color Twitch sent, or {@link UserColorCache#NO_COLOR}.
+ */
+public record ArchivedMessage(long timestamp, String channel, String username, String message, int color, boolean isMeMessage) {
+}
@@ -1,232 +1,544 @@
 package eu.pabl.twitchchat.twitch_integration;
 
-import com.google.common.collect.ImmutableMap;
+import eu.pabl.twitchchat.config.KeywordFilter;
 import eu.pabl.twitchchat.config.ModConfig;
-import java.awt.Color;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import javax.net.ssl.SSLSocketFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.text.Text;
-import net.minecraft.text.TextColor;
-import org.pircbotx.Channel;
-import org.pircbotx.Configuration;
-import org.pircbotx.PircBotX;
-import org.pircbotx.User;
-import org.pircbotx.cap.EnableCapHandler;
-import org.pircbotx.exception.IrcException;
-import org.pircbotx.hooks.ListenerAdapter;
-import org.pircbotx.hooks.events.*;
 import eu.pabl.twitchchat.TwitchChatMod;
 
-public class Bot extends ListenerAdapter {
-  private final PircBotX ircBot;
-  private final String username;
-  private String channel;
-  private ExecutorService myExecutor;
-  private HashMap<String, TextColor> formattingColorCache; // Map of usernames to colors to keep consistency with usernames and colors
-
-  public Bot(String username, String oauthKey, String channel) {
-    this.channel = channel.toLowerCase();
-    this.username = username.toLowerCase();
-    formattingColorCache = new HashMap<>();
+public class Bot implements TwitchTransport.Listener {
+  // Twitch asks clients to back off exponentially when reconnecting, see https://dev.twitch.tv/docs/irc/#keepalive-messages
+  private static final long RECONNECT_BASE_DELAY_MILLIS = 1_000;
+  private static final long RECONNECT_MAX_DELAY_MILLIS = 60_000;
+  private static final Duration STOP_TIMEOUT = Duration.ofSeconds(2);
 
-    Configuration.Builder builder = new Configuration.Builder()
-        .setAutoNickChange(false) //Twitch doesn't support multiple users
-        .setOnJoinWhoEnabled(false) //Twitch doesn't support WHO command
-        .setEncoding(StandardCharsets.UTF_8) // Use UTF-8 on Windows.
-        .setCapEnabled(true)
-        .addCapHandler(new EnableCapHandler("twitch.tv/membership")) //Twitch by default doesn't send JOIN, PART, and NAMES unless you request it, see https://dev.twitch.tv/docs/irc/guide/#twitch-irc-capabilities
-        .addCapHandler(new EnableCapHandler("twitch.tv/tags"))
-        .addCapHandler(new EnableCapHandler("twitch.tv/commands"))
+  private static final TwitchLogger LOG = TwitchLogger.get("bot");
+  // A line per chat message or event adds up during raids, so only a sample of them is logged.
+  private static final TwitchLogger MESSAGE_LOG = TwitchLogger.sampled("messages");
 
-        .addServer("irc.chat.twitch.tv", 6697)
-        .setSocketFactory(SSLSocketFactory.getDefault())
-        .setName(this.username)
-        .setServerPassword(oauthKey);
+  private final TwitchTransport transport;
+  private final String username;
+  private final Set<String> channels; // Every channel we're in, in the order they were joined
+  private volatile String primaryChannel; // The channel our messages are sent to
+  // All of the bot's threads are virtual. The workers run the connection loop, and PircBotX's listeners one per event.
+  // The scheduler runs the timers, and everything that has to go out in order: our messages and channel switches.
+  private final ExecutorService workers;
+  private final ScheduledExecutorService scheduler;
+  private final OutboundMessageScheduler outboundMessageScheduler;
+  private volatile ConnectionState state = ConnectionState.STOPPED;
+  private final Object reconnectLock = new Object();
+  private final UserColorCache userColorCache; // Map of usernames to colors to keep consistency with usernames and colors
+  private final ChatArchiver archiver; // null when archiving is off
+  // How far Twitch's clock (tmi-sent-ts) is ahead of ours, as of the last message that had it.
+  private volatile long twitchClockOffset;
+  private final ChatHistory chatHistory;
+  private final Map<String, RoomState> roomStates = new ConcurrentHashMap<>();
+  private final GiftBombTracker giftBombs = new GiftBombTracker();
+  private final AdaptiveSampler sampler = new AdaptiveSampler((channel, sampling) -> TwitchChatMod.addNotification(
+      Text.translatable(sampling ? "text.twitchchat.sampling.started" : "text.twitchchat.sampling.stopped", channel)));
 
-    if (!channel.equals("")) {
-       builder.addAutoJoinChannel("#" + this.channel);
+  public Bot(String username, String oauthKey, List<String> channels) {
+    this.channels = new CopyOnWriteArraySet<>();
+    for (String channel : channels) {
+      if (!channel.equals("")) {
+        this.channels.add(channel.toLowerCase());
+      }
     }
+    this.primaryChannel = this.channels.isEmpty() ? "" : this.channels.iterator().next();
+    this.username = username.toLowerCase();
+    ModConfig modConfig = ModConfig.getConfig();
+    userColorCache = new UserColorCache(modConfig.getColorCacheSize(), modConfig.getColorCacheTtlMinutes() * 60_000L);
 
-    Configuration config = builder.addListener(this)
-        .setAutoSplitMessage(false)
-        .buildConfiguration();
+    this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Twitch Chat worker-", 0).factory());
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("Twitch Chat scheduler").factory());
 
-    this.ircBot = new PircBotX(config);
-    this.myExecutor = Executors.newCachedThreadPool();
+    // Twitch by default, but it can be pointed at a local server for testing.
+    this.transport = modConfig.getTransport() == TwitchTransport.Type.NIO
+        ? new NioTransport(modConfig.getServerHost(), modConfig.getServerPort(), modConfig.isServerTlsEnabled(),
+            this.username, oauthKey, this)
+        : new PircBotXTransport(modConfig.getServerHost(), modConfig.getServerPort(), modConfig.isServerTlsEnabled(),
+            this.username, oauthKey, this, workers);
+    this.chatHistory = new ChatHistory(modConfig.getHistorySize());
+    this.archiver = modConfig.isArchiveEnabled()
+        ? new ChatArchiver(getArchiveDirectory(), modConfig.getArchiveSegmentSizeMb() * 1024L * 1024L, scheduler)
+        : null;
+    this.outboundMessageScheduler = new OutboundMessageScheduler(modConfig.getSendQueueCapacity(),
+        (channel, message) -> {
+          transport.sendMessage(channel, message);
+          TwitchMetrics.messageSent();
+          if (archiver != null) {
+            // Twitch doesn't send our own messages back to us, so they're archived when they're sent, on Twitch's
+            // clock like the others so that they're read back in the right place.
+            archiver.append(System.currentTimeMillis() + twitchClockOffset, channel, this.username, message,
+                UserColorCache.NO_COLOR, false);
+          }
+        }, scheduler);
   }
 
   public void start() {
-    System.out.println("TWITCH BOT STARTED");
-    myExecutor.execute(() -> {
+    LOG.info("TWITCH BOT STARTED");
+    state = ConnectionState.CONNECTING;
+    workers.execute(this::connectionLoop);
+  }
+
+  /**
+   * Keeps the bot connected until it's stopped. connect() returns when the connection is lost, and then we try
+   * again after a jittered exponential backoff, which is reset every time a connection succeeds.
+   */
+  private void connectionLoop() {
+    int failedAttempts = 0;
+    while (state != ConnectionState.STOPPED) {
       try {
-        ircBot.startBot();
-      } catch (IOException | IrcException e) {
-        e.printStackTrace();
+        transport.connect();
+      } catch (IOException e) {
+        LOG.warn("TWITCH BOT FAILED TO CONNECT: {}", e.getMessage());
+      }
+
+      if (state == ConnectionState.STOPPED) {
+        break;
+      }
+      if (state == ConnectionState.CONNECTED) {
+        failedAttempts = 0;
+      }
+      if (!ModConfig.getConfig().isAutoReconnectEnabled()) {
+        state = ConnectionState.STOPPED;
+        TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.disconnected"));
+        break;
+      }
+
+      long delay = reconnectDelay(failedAttempts++);
+      state = ConnectionState.RECONNECTING;
+      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.reconnecting", Math.max(1, delay / 1000)));
+      synchronized (reconnectLock) {
+        try {
+          // stop() wakes us up early
+          if (state != ConnectionState.STOPPED) {
+            reconnectLock.wait(delay);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
       }
-    });
+    }
   }
 
+  private static long reconnectDelay(int failedAttempts) {
+    long delay = Math.min(RECONNECT_MAX_DELAY_MILLIS, RECONNECT_BASE_DELAY_MILLIS << Math.min(failedAttempts, 16));
+    // Jitter, so that every client doesn't come back at the same time after a Twitch outage.
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  /**
+   * Disconnects and stops every thread of the bot. Messages that were already allowed out are sent first, the ones
+   * still waiting for the rate limits are dropped. Waits at most a couple of seconds.
+   */
   public void stop() {
-    ircBot.stopBotReconnect();
-    ircBot.close();
+    if (workers.isShutdown()) {
+      return;
+    }
+    long deadline = System.nanoTime() + STOP_TIMEOUT.toNanos();
+    state = ConnectionState.STOPPED;
+    synchronized (reconnectLock) {
+      reconnectLock.notifyAll();
+    }
+
+    int dropped = outboundMessageScheduler.close();
+    if (dropped > 0) {
+      LOG.info("Dropped {} messages that were waiting to be sent", dropped);
+    }
+    scheduler.shutdown();
+    awaitTermination(scheduler, deadline);
+
+    transport.close();
+    if (archiver != null) {
+      archiver.close();
+    }
+    workers.shutdown();
+    awaitTermination(workers, deadline);
+  }
+
+  private static void awaitTermination(ExecutorService executor, long deadline) {
+    try {
+      if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        LOG.warn("Twitch bot threads didn't stop in time, interrupting them");
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
   }
 
   public boolean isConnected() {
-    return ircBot.isConnected();
+    return transport.isConnected();
+  }
+
+  public ConnectionState getState() {
+    return state;
   }
 
   @Override
-  public void onMessage(MessageEvent event) throws Exception {
-    String message = event.getMessage();
-    System.out.println("TWITCH MESSAGE: " + message);
-    User user = event.getUser();
-    if (user != null) {
-      ImmutableMap<String, String> v3Tags = event.getV3Tags();
-      if (v3Tags != null) {
-        String nick = user.getNick();
-        if (!ModConfig.getConfig().getIgnoreList().contains(nick)) {
-          String colorTag = v3Tags.get("color");
-          TextColor formattingColor;
-          
-          if (isFormattingColorCached(nick)) {
-            formattingColor = getFormattingColor(nick);
-          } else {
-            if (colorTag.equals("")) {
-              formattingColor = CalculateMinecraftColor.getDefaultUserColor(nick);
-            } else {
-              Color userColor = Color.decode(colorTag);
-              formattingColor = TextColor.fromRgb(userColor.getRGB());
-            }
-            putFormattingColor(nick, formattingColor);
-          }
+  public void onConnect() {
+    if (state == ConnectionState.STOPPED) {
+      // stop() was called while we were connecting.
+      transport.disconnect();
+      return;
+    }
+    if (state == ConnectionState.RECONNECTING) {
+      TwitchMetrics.reconnected();
+      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.reconnected"));
+    }
+    state = ConnectionState.CONNECTED;
 
-          String formattedTime = TwitchChatMod.formatTMISentTimestamp(v3Tags.get("tmi-sent-ts"));
-          TwitchChatMod.addTwitchMessage(formattedTime, nick, message, formattingColor, false);
-        }
-      } else {
-        System.out.println("Message with no v3tags: " + event.getMessage());
-      }
-    } else {
-      System.out.println("NON-USER MESSAGE" + event.getMessage());
+    // All channels share this one connection, (re)join them every time we connect.
+    for (String channel : channels) {
+      transport.join(channel);
     }
   }
 
   @Override
-  public void onUnknown(UnknownEvent event) throws Exception {
-    switch (event.getCommand()) {
-      case "USERSTATE" -> {
-        // Info about our user. More at https://dev.twitch.tv/docs/irc/commands/#userstate
-        // Set our correct colour :).
-        String colorTag = event.getTags().get("color");
-        if (colorTag != null) {
-          Color userColor = Color.decode(colorTag);
-          TextColor formattingColor = TextColor.fromRgb(userColor.getRGB());
+  public void onMessage(String channel, String user, String message, TwitchMessageTags tags, boolean isAction) {
+    MESSAGE_LOG.debug("TWITCH MESSAGE: {}", message);
+    handleChatMessage(channel != null ? channel : primaryChannel, user, message, tags, isAction);
+  }
 
-          putFormattingColor(getUsername(), formattingColor);
-        }
-      }
-      default -> {
-        System.out.println("UNKNOWN TWITCH EVENT: " + event.toString());
-      }
+  /**
+   * Everything that happens to a chat message after it has been received, whatever it came from.
+   */
+  public void handleChatMessage(String channel, String nick, String message, TwitchMessageTags tags, boolean isMeMessage) {
+    TwitchMetrics.messageReceived();
+    if (tags.getSentTimestamp() != TwitchMessageTags.NO_TIMESTAMP) {
+      twitchClockOffset = tags.getSentTimestamp() - System.currentTimeMillis();
+    }
+    if (archiver != null) {
+      // Everything is archived, even the messages that are ignored or sampled out of the chat.
+      archiver.append(tags.getSentTimestampOrNow(), channel, nick, message, tags.getColor(), isMeMessage);
     }
+    ModConfig config = ModConfig.getConfig();
+    if (config.isIgnored(nick)) {
+      TwitchMetrics.messageIgnored();
+      return;
+    }
+    int keywords = config.getKeywordFilter().scan(message);
+    if ((keywords & KeywordFilter.HIDE) != 0) {
+      TwitchMetrics.messageIgnored();
+      return;
+    }
+    MessageEmotes emotes = tags.getEmotes();
+    if ((keywords & KeywordFilter.REDACT) != 0) {
+      String redacted = config.getKeywordFilter().redact(message);
+      emotes = emotes.withoutChanged(message, redacted);
+      message = redacted;
+    }
+    // Before sampling, so that messages that were never shown can still be found.
+    if (config.getHistorySize() > 0) {
+      chatHistory.add(new ArchivedMessage(tags.getSentTimestampOrNow(), channel, nick, message, tags.getColor(), isMeMessage),
+          System.currentTimeMillis());
+    }
+    if (tags.getBits() > 0) {
+      // The cheer itself goes with the subs and raids, which are never sampled. Its message is a chat message like any
+      // other, that can be sampled, highlighted, broadcast and cleared.
+      TwitchChatMod.queueTwitchEvent(TwitchEvent.cheer(channel, nick, tags));
+    }
+
+    boolean highlighted = (keywords & KeywordFilter.HIGHLIGHT) != 0;
+    if (!sampler.sample(channel, highlighted || isPriority(message, tags, config), System.currentTimeMillis(),
+        config.getSamplingThreshold(), config.getSamplingTargetRate())) {
+      TwitchMetrics.messageSampledOut();
+      return;
+    }
+
+    // The username color is resolved when the message is shown, in case it's dropped before that.
+    TwitchChatMod.queueTwitchMessage(new TwitchMessage(tags.getSentTimestampOrNow(), channel, nick, message,
+        tags.getColor(), (isMeMessage ? TwitchMessage.FLAG_ME : 0) | (highlighted ? TwitchMessage.FLAG_HIGHLIGHT : 0),
+        tags.getId(), emotes));
   }
 
-  @Override
-  public void onNotice(NoticeEvent event) {
-    System.out.println("TWITCH NOTICE: " + event.toString());
-    TwitchChatMod.addNotification(Text.literal(event.getNotice()));
+  /**
+   * Priority messages are always shown, even when the channel is too fast and is being sampled.
+   */
+  private boolean isPriority(String message, TwitchMessageTags tags, ModConfig config) {
+    int priorityBadges = 0;
+    if (config.isSamplingKeepModerators()) {
+      priorityBadges |= TwitchMessageTags.BADGE_BROADCASTER | TwitchMessageTags.BADGE_MODERATOR
+          | TwitchMessageTags.BADGE_STAFF | TwitchMessageTags.BADGE_ADMIN | TwitchMessageTags.BADGE_GLOBAL_MOD;
+    }
+    if (config.isSamplingKeepVips()) {
+      priorityBadges |= TwitchMessageTags.BADGE_VIP;
+    }
+    if (config.isSamplingKeepSubscribers()) {
+      priorityBadges |= TwitchMessageTags.BADGE_SUBSCRIBER | TwitchMessageTags.BADGE_FOUNDER;
+    }
+    return tags.hasBadge(priorityBadges)
+        || (config.isSamplingKeepBits() && tags.getBits() > 0)
+        || (config.isSamplingKeepMentions() && mentions(message, username));
   }
 
-  @Override
-  public void onKick(KickEvent event) {
-    System.out.println("TWITCH KICK: " + event.toString());
-    String message = event.getReason();
-    TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.kicked", message));
+  // Whether the name appears as a whole word, with or without an @.
+  private static boolean mentions(String message, String name) {
+    int length = name.length();
+    if (length == 0) {
+      return false;
+    }
+    for (int i = message.length() - length; i >= 0; i--) {
+      if (message.regionMatches(true, i, name, 0, length)
+          && (i == 0 || !isNameChar(message.charAt(i - 1)))
+          && (i + length == message.length() || !isNameChar(message.charAt(i + length)))) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  @Override
-  public void onDisconnect(DisconnectEvent event) throws Exception {
-    super.onDisconnect(event);
-    System.out.println("TWITCH DISCONNECT: " + event.toString());
-    Exception disconnectException = event.getDisconnectException();
+  private static boolean isNameChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
   }
 
-  // Handle /me
   @Override
-  public void onAction(ActionEvent event) throws Exception {
-    User user = event.getUser();
-
-    if (user != null) {
-      String nick = user.getNick();
-
-      if (!ModConfig.getConfig().getIgnoreList().contains(nick.toLowerCase())) {
-        String formattedTime = TwitchChatMod.formatTMISentTimestamp(event.getTimestamp());
-
-        TextColor formattingColor;
-        if (isFormattingColorCached(nick)) {
-          formattingColor = getFormattingColor(nick);
-        } else {
-          formattingColor = CalculateMinecraftColor.getDefaultUserColor(nick);
-          putFormattingColor(nick, formattingColor);
+  public void onCommand(String command, String channel, String parameter, TwitchMessageTags tags) {
+    switch (command) {
+      case "USERSTATE" -> {
+        // Info about our user. More at https://dev.twitch.tv/docs/irc/commands/#userstate
+        // Set our correct colour :).
+        if (tags.hasColor()) {
+          userColorCache.put(getUsername(), tags.getColor());
+        }
+        // Broadcasters, moderators and VIPs can send more messages.
+        outboundMessageScheduler.setElevated(channel, tags.hasBadge(
+            TwitchMessageTags.BADGE_BROADCASTER | TwitchMessageTags.BADGE_MODERATOR | TwitchMessageTags.BADGE_VIP));
+      }
+      case "CLEARCHAT" -> {
+        // A timeout or a ban when there's a user, otherwise the whole chat was cleared.
+        // More at https://dev.twitch.tv/docs/irc/commands/#clearchat
+        String user = parameter != null ? parameter.toLowerCase(Locale.ROOT) : null;
+        TwitchChatMod.clearChat(channel, user, tags.getSentTimestampOrNow());
+        if (user == null) {
+          TwitchChatMod.addNotification(Text.translatable("text.twitchchat.moderation.chat_cleared", channel));
+        }
+      }
+      case "CLEARMSG" -> {
+        // A single message was deleted. More at https://dev.twitch.tv/docs/irc/commands/#clearmsg
+        String messageId = tags.get("target-msg-id");
+        if (messageId != null) {
+          TwitchChatMod.deleteMessage(messageId);
+        }
+      }
+      case "ROOMSTATE" -> {
+        // The chat modes of a channel. More at https://dev.twitch.tv/docs/irc/commands/#roomstate
+        RoomState oldState = getRoomState(channel);
+        RoomState newState = oldState.update(tags);
+        roomStates.put(channel, newState);
+        outboundMessageScheduler.setSlowMode(channel, newState.slowSeconds());
+        notifyRoomStateChanges(channel, oldState, newState);
+      }
+      case "USERNOTICE" -> {
+        // Subscriptions, gifts, raids and announcements. More at https://dev.twitch.tv/docs/irc/commands/#usernotice
+        TwitchEvent twitchEvent = TwitchEvent.fromUserNotice(channel, tags, parameter);
+        if (twitchEvent != null && !giftBombs.absorb(twitchEvent)) {
+          TwitchChatMod.queueTwitchEvent(twitchEvent);
+        }
+      }
+      case "RECONNECT" -> {
+        // Twitch is about to restart the server we're connected to, the connection loop will take us to a new one.
+        transport.disconnect();
+      }
+      case "NOTICE" -> {
+        LOG.info("TWITCH NOTICE: {}", parameter);
+        if (parameter != null) {
+          TwitchChatMod.addNotification(Text.literal(parameter));
         }
+      }
+      case "KICK" -> {
+        LOG.warn("TWITCH KICK: {} {}", channel, parameter);
+        TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.kicked", parameter));
+      }
+      default -> {
+        MESSAGE_LOG.debug("UNKNOWN TWITCH EVENT: {} {} {}", command, channel, parameter);
+      }
+    }
+  }
 
-        TwitchChatMod.addTwitchMessage(formattedTime, nick, event.getMessage(), formattingColor, true);
+  private static void notifyRoomStateChanges(String channel, RoomState oldState, RoomState newState) {
+    if (newState.slowSeconds() != oldState.slowSeconds()) {
+      TwitchChatMod.addNotification(newState.slowSeconds() > 0
+          ? Text.translatable("text.twitchchat.roomstate.slow.on", channel, newState.slowSeconds())
+          : Text.translatable("text.twitchchat.roomstate.slow.off", channel));
+    }
+    if (newState.followersOnlyMinutes() != oldState.followersOnlyMinutes()) {
+      if (newState.followersOnlyMinutes() < 0) {
+        TwitchChatMod.addNotification(Text.translatable("text.twitchchat.roomstate.followers_only.off", channel));
+      } else if (newState.followersOnlyMinutes() == 0) {
+        TwitchChatMod.addNotification(Text.translatable("text.twitchchat.roomstate.followers_only.on", channel));
+      } else {
+        TwitchChatMod.addNotification(Text.translatable("text.twitchchat.roomstate.followers_only.on_minutes", channel,
+            newState.followersOnlyMinutes()));
       }
+    }
+    if (newState.emoteOnly() != oldState.emoteOnly()) {
+      TwitchChatMod.addNotification(Text.translatable(newState.emoteOnly()
+          ? "text.twitchchat.roomstate.emote_only.on" : "text.twitchchat.roomstate.emote_only.off", channel));
+    }
+    if (newState.subsOnly() != oldState.subsOnly()) {
+      TwitchChatMod.addNotification(Text.translatable(newState.subsOnly()
+          ? "text.twitchchat.roomstate.subs_only.on" : "text.twitchchat.roomstate.subs_only.off", channel));
+    }
+  }
+
+  @Override
+  public void onDisconnect(Exception cause) {
+    if (cause != null) {
+      LOG.warn("TWITCH DISCONNECT: {}", cause.getMessage(), cause);
     } else {
-      System.out.println("NON-USER ACTION" + event.getMessage());
+      LOG.info("TWITCH DISCONNECT");
     }
   }
 
-  Channel currentChannel;
   @Override
-  public void onJoin(JoinEvent event) throws Exception {
-    super.onJoin(event);
-    Channel channel = event.getChannel();
-     if (currentChannel == null || !currentChannel.equals(channel)) {
-      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.connected", this.channel));
-      currentChannel = channel;
+  public void onJoin(String channel, String user) {
+    // With the membership capability we're also told about everyone else joining, only announce our own joins.
+    if (user.equalsIgnoreCase(username)) {
+      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.bot.connected", channel));
     }
   }
 
   /**
-   * We MUST respond to this or else we will get kicked
+   * Sends a message to the primary channel, as soon as Twitch's rate limits allow it.
+   * @return false if the message was dropped because too many messages are waiting to be sent.
    */
-  @Override
-  public void onPing(PingEvent event) {
-    ircBot.sendRaw().rawLineNow(String.format("PONG %s\r\n", event.getPingValue()));
+  public boolean sendMessage(String message) {
+    return sendMessage(primaryChannel, message);
+  }
+
+  public boolean sendMessage(String channel, String message) {
+    boolean queued = outboundMessageScheduler.submit(channel, message);
+    if (!queued) {
+      TwitchMetrics.sendDropped();
+    }
+    return queued;
   }
 
-  public void sendMessage(String message) {
-    ircBot.sendIRC().message("#" + this.channel, message);
+  public int getOutboundQueuedCount() {
+    return outboundMessageScheduler.getQueuedCount();
   }
 
   public String getUsername() {
     return username;
   }
 
-  public void putFormattingColor(String nick, TextColor color) {
-    formattingColorCache.put(nick.toLowerCase(), color);
+  public UserColorCache getUserColorCache() {
+    return userColorCache;
   }
-  public TextColor getFormattingColor(String nick) {
-    return formattingColorCache.get(nick.toLowerCase());
+
+  public RoomState getRoomState(String channel) {
+    return roomStates.getOrDefault(channel, RoomState.DEFAULT);
+  }
+
+  public ChatHistory getChatHistory() {
+    return chatHistory;
+  }
+
+  public String getPrimaryChannel() {
+    return primaryChannel;
+  }
+
+  public static Path getArchiveDirectory() {
+    return FabricLoader.getInstance().getGameDir().resolve("twitchchat").resolve("archive");
+  }
+
+  public Set<String> getChannels() {
+    return channels;
   }
-  public boolean isFormattingColorCached(String nick) {
-    return formattingColorCache.containsKey(nick.toLowerCase());
+
+  /**
+   * @return the channels that are too fast to read and only partly shown right now.
+   */
+  public List<String> getSampledChannels() {
+    return channels.stream().filter(sampler::isSampling).toList();
   }
 
+  /**
+   * Leaves every channel and joins this one instead.
+   */
   public void joinChannel(String channel) {
-    String oldChannel = this.channel;
-    this.channel = channel.toLowerCase();
-    if (ircBot.isConnected()) {
-      myExecutor.execute(() -> {
-        ircBot.sendRaw().rawLine("PART #" + oldChannel); // Leave the channel
-        ircBot.sendIRC().joinChannel("#" + this.channel); // Join the new channel
-        ircBot.sendCAP().request("twitch.tv/membership", "twitch.tv/tags", "twitch.tv/commands"); // Ask for capabilities
+    String newChannel = channel.toLowerCase();
+    List<String> oldChannels = channels.stream().filter(c -> !c.equals(newChannel)).toList();
+    channels.retainAll(Set.of(newChannel));
+    boolean alreadyJoined = !channels.add(newChannel);
+    this.primaryChannel = newChannel;
+    oldChannels.forEach(this::forgetChannel);
+    if (transport.isConnected()) {
+      runInOrder(() -> {
+        for (String oldChannel : oldChannels) {
+          transport.part(oldChannel); // Leave the channel
+        }
+        if (!alreadyJoined) {
+          transport.join(newChannel); // Join the new channel
+        }
       });
     }
   }
+
+  /**
+   * Joins a channel without leaving the ones we're already in.
+   */
+  public void addChannel(String channel) {
+    String newChannel = channel.toLowerCase();
+    if (!channels.add(newChannel)) {
+      return;
+    }
+    if (primaryChannel.equals("")) {
+      primaryChannel = newChannel;
+    }
+    if (transport.isConnected()) {
+      runInOrder(() -> transport.join(newChannel));
+    }
+  }
+
+  public void removeChannel(String channel) {
+    String oldChannel = channel.toLowerCase();
+    if (!channels.remove(oldChannel)) {
+      return;
+    }
+    forgetChannel(oldChannel);
+    if (primaryChannel.equals(oldChannel)) {
+      primaryChannel = channels.isEmpty() ? "" : channels.iterator().next();
+    }
+    if (transport.isConnected()) {
+      runInOrder(() -> transport.part(oldChannel));
+    }
+  }
+
+  /**
+   * Runs IRC commands on the scheduler, after the ones that came before them.
+   */
+  private void runInOrder(Runnable task) {
+    try {
+      scheduler.execute(task);
+    } catch (RejectedExecutionException e) {
+      // The bot has been stopped.
+    }
+  }
+
+  private void forgetChannel(String channel) {
+    sampler.remove(channel);
+    roomStates.remove(channel);
+    giftBombs.remove(channel);
+    outboundMessageScheduler.setSlowMode(channel, 0);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,340 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a transcript of every message in append-only segment files, for moderation review.
+ *
+ * Messages are queued from any thread and written in batches from the scheduler, so archiving costs the IRC thread
+ * one queue insertion per message. Every segment "chat-START.seg" has a sparse timestamp index next to it,
+ * "chat-START.idx", so that reading only goes through the parts of the segment that can hold the messages asked for.
+ * Messages from different channels, and our own, can arrive slightly out of order, so the index keeps the earliest
+ * and the latest timestamp of every part instead of assuming they're sorted.
+ *
+ * Segment format, all big endian:
+ * <pre>
+ * int   MAGIC
+ * short VERSION
+ * then records until the end of the file:
+ * int   length of the rest of the record
+ * long  timestamp (tmi-sent-ts)
+ * int   username color, or -1
+ * byte  flags (FLAG_ME)
+ * byte  channel length, UTF-8 channel
+ * byte  username length, UTF-8 username
+ * short message length, UTF-8 message
+ * </pre>
+ * Index format: one entry for every INDEX_INTERVAL bytes of records, written once they're all in the segment:
+ * <pre>
+ * long  earliest timestamp of the records
+ * long  latest timestamp of the records
+ * long  offset in the segment right after them, where the next entry's records start
+ * </pre>
+ * The records after the last entry aren't indexed yet.
+ */
+public class ChatArchiver {
+  private static final int MAGIC = 0x54574341; // "TWCA"
+  private static final short VERSION = 2;
+  private static final int HEADER_SIZE = 6;
+  private static final int FLAG_ME = 1;
+  private static final int RECORD_FIXED_SIZE = 8 + 4 + 1 + 1 + 1 + 2;
+  private static final int MAX_RECORD_SIZE = 4 + RECORD_FIXED_SIZE + 255 + 255 + 0xFFFF;
+  // One index entry for every this many bytes of records.
+  private static final long INDEX_INTERVAL = 64 * 1024;
+  private static final int INDEX_ENTRY_SIZE = 24;
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final long FLUSH_INTERVAL_MILLIS = 500;
+  // Past this, messages are dropped instead of piling up in memory when the disk can't keep up.
+  private static final int MAX_PENDING = 100_000;
+
+  private static final TwitchLogger LOG = TwitchLogger.get("archive");
+
+  private final Path directory;
+  private final long segmentSize;
+  private final ConcurrentLinkedQueue<ArchivedMessage> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 64);
+  private final ScheduledFuture<?> flushTask;
+
+  // Only touched from flush() and close(), which are synchronized.
+  private FileChannel segment;
+  private FileChannel index;
+  private long segmentPosition;
+  // The records since the last index entry.
+  private long intervalStart;
+  private long intervalMinTimestamp;
+  private long intervalMaxTimestamp;
+  private boolean closed;
+
+  public ChatArchiver(Path directory, long segmentSize, ScheduledExecutorService scheduler) {
+    this.directory = directory;
+    this.segmentSize = Math.max(segmentSize, HEADER_SIZE + MAX_RECORD_SIZE);
+    this.flushTask = scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues a message to be written. Never blocks.
+   */
+  public void append(long timestamp, String channel, String username, String message, int color, boolean isMeMessage) {
+    if (pendingCount.incrementAndGet() > MAX_PENDING) {
+      pendingCount.decrementAndGet();
+      return;
+    }
+    pending.offer(new ArchivedMessage(timestamp, channel, username, message, color, isMeMessage));
+  }
+
+  /**
+   * Writes everything that's been queued so far.
+   */
+  public synchronized void flush() {
+    if (closed) {
+      return;
+    }
+    try {
+      ArchivedMessage message;
+      while ((message = pending.poll()) != null) {
+        pendingCount.decrementAndGet();
+        write(message);
+      }
+      writeBuffers();
+    } catch (IOException e) {
+      LOG.error("Couldn't write to the chat archive in {}", directory, e);
+    }
+  }
+
+  public synchronized void close() {
+    flushTask.cancel(false);
+    flush();
+    closed = true;
+    try {
+      closeSegment();
+    } catch (IOException e) {
+      LOG.error("Couldn't close the chat archive in {}", directory, e);
+    }
+  }
+
+  private void write(ArchivedMessage message) throws IOException {
+    byte[] channel = truncate(message.channel().getBytes(StandardCharsets.UTF_8), 255);
+    byte[] username = truncate(message.username().getBytes(StandardCharsets.UTF_8), 255);
+    byte[] text = truncate(message.message().getBytes(StandardCharsets.UTF_8), 0xFFFF);
+    int recordSize = 4 + RECORD_FIXED_SIZE + channel.length + username.length + text.length;
+
+    long position = segmentPosition + buffer.position();
+    if (segment == null || position + recordSize > segmentSize) {
+      writeBuffers();
+      openSegment(message.timestamp());
+      position = segmentPosition + buffer.position();
+    }
+    if (buffer.remaining() < recordSize) {
+      writeBuffers();
+    }
+
+    if (position - intervalStart >= INDEX_INTERVAL) {
+      endInterval(position);
+      if (!indexBuffer.hasRemaining()) {
+        writeBuffers();
+      }
+    }
+    intervalMinTimestamp = Math.min(intervalMinTimestamp, message.timestamp());
+    intervalMaxTimestamp = Math.max(intervalMaxTimestamp, message.timestamp());
+
+    buffer.putInt(recordSize - 4)
+        .putLong(message.timestamp())
+        .putInt(message.color())
+        .put((byte) (message.isMeMessage() ? FLAG_ME : 0))
+        .put((byte) channel.length).put(channel)
+        .put((byte) username.length).put(username)
+        .putShort((short) text.length).put(text);
+  }
+
+  private void endInterval(long position) {
+    indexBuffer.putLong(intervalMinTimestamp).putLong(intervalMaxTimestamp).putLong(position);
+    intervalStart = position;
+    intervalMinTimestamp = Long.MAX_VALUE;
+    intervalMaxTimestamp = Long.MIN_VALUE;
+  }
+
+  private static byte[] truncate(byte[] bytes, int maxLength) {
+    if (bytes.length <= maxLength) {
+      return bytes;
+    }
+    // Could cut a character in half, which decoding turns into a replacement character.
+    byte[] truncated = new byte[maxLength];
+    System.arraycopy(bytes, 0, truncated, 0, maxLength);
+    return truncated;
+  }
+
+  private void writeBuffers() throws IOException {
+    if (segment == null) {
+      return;
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      segmentPosition += segment.write(buffer);
+    }
+    buffer.clear();
+    writeIndex();
+  }
+
+  private void writeIndex() throws IOException {
+    indexBuffer.flip();
+    while (indexBuffer.hasRemaining()) {
+      index.write(indexBuffer);
+    }
+    indexBuffer.clear();
+  }
+
+  private void openSegment(long timestamp) throws IOException {
+    closeSegment();
+    Files.createDirectories(directory);
+    // Segments are named after their first message, made unique if several would start at the same millisecond.
+    long start = timestamp;
+    while (Files.exists(directory.resolve("chat-" + start + ".seg"))) {
+      start++;
+    }
+    segment = FileChannel.open(directory.resolve("chat-" + start + ".seg"),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    index = FileChannel.open(directory.resolve("chat-" + start + ".idx"),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    segmentPosition = 0;
+    intervalStart = HEADER_SIZE;
+    intervalMinTimestamp = Long.MAX_VALUE;
+    intervalMaxTimestamp = Long.MIN_VALUE;
+
+    buffer.putInt(MAGIC).putShort(VERSION);
+  }
+
+  private void closeSegment() throws IOException {
+    if (segment != null) {
+      // Index the last records too, so that the whole segment can be skipped by its index.
+      writeBuffers();
+      if (segmentPosition > intervalStart) {
+        endInterval(segmentPosition);
+        writeIndex();
+      }
+      segment.close();
+      index.close();
+      segment = null;
+      index = null;
+    }
+  }
+
+  /**
+   * Reads the archived messages sent between two timestamps (inclusive), oldest segment first.
+   */
+  public static void read(Path directory, long from, long to, Consumer<ArchivedMessage> consumer) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    List<Long> starts = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.map(file -> file.getFileName().toString())
+          .filter(name -> name.startsWith("chat-") && name.endsWith(".seg"))
+          .forEach(name -> starts.add(Long.parseLong(name.substring(5, name.length() - 4))));
+    } catch (NumberFormatException e) {
+      throw new IOException("Unexpected file in the chat archive " + directory, e);
+    }
+    starts.sort(null);
+
+    // Segments are read through the same buffer, so that reading doesn't need more memory for bigger segments.
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    for (long start : starts) {
+      readSegment(directory.resolve("chat-" + start + ".seg"), directory.resolve("chat-" + start + ".idx"),
+          from, to, consumer, buffer);
+    }
+  }
+
+  private static void readSegment(Path segmentFile, Path indexFile, long from, long to,
+                                  Consumer<ArchivedMessage> consumer, ByteBuffer buffer) throws IOException {
+    ByteBuffer index = Files.exists(indexFile) ? ByteBuffer.wrap(Files.readAllBytes(indexFile)) : ByteBuffer.allocate(0);
+    try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      channel.read(header, 0);
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+        throw new IOException("Not a chat archive segment: " + segmentFile);
+      }
+      if (header.getShort() != VERSION) {
+        LOG.warn("Skipping {}, it was written by another version", segmentFile);
+        return;
+      }
+
+      // Only the indexed parts that can hold messages in the range are read, and everything that isn't indexed yet.
+      long start = HEADER_SIZE;
+      for (int entry = 0; entry + INDEX_ENTRY_SIZE <= index.capacity(); entry += INDEX_ENTRY_SIZE) {
+        long end = index.getLong(entry + 16);
+        if (index.getLong(entry) <= to && index.getLong(entry + 8) >= from
+            && !readRecords(channel, start, end, from, to, consumer, buffer)) {
+          return;
+        }
+        start = end;
+      }
+      readRecords(channel, start, channel.size(), from, to, consumer, buffer);
+    }
+  }
+
+  /**
+   * Reads the records between two offsets of a segment.
+   * @return false if it found something that isn't a record, so that the rest of the segment shouldn't be read.
+   */
+  private static boolean readRecords(FileChannel channel, long start, long end, long from, long to,
+                                     Consumer<ArchivedMessage> consumer, ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    long position = start;
+    while (position < end) {
+      // A record is never bigger than the buffer, so there's always room after the start of one that didn't fit.
+      buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (end - position)));
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      position += read;
+      buffer.flip();
+      while (buffer.remaining() >= 4) {
+        int length = buffer.getInt(buffer.position());
+        if (length < RECORD_FIXED_SIZE || length > MAX_RECORD_SIZE - 4) {
+          return false;
+        }
+        if (length > buffer.remaining() - 4) {
+          break;
+        }
+        buffer.getInt();
+        long timestamp = buffer.getLong();
+        int color = buffer.getInt();
+        boolean isMeMessage = (buffer.get() & FLAG_ME) != 0;
+        String channelName = readString(buffer, buffer.get() & 0xFF);
+        String username = readString(buffer, buffer.get() & 0xFF);
+        String message = readString(buffer, buffer.getShort() & 0xFFFF);
+        if (timestamp >= from && timestamp <= to) {
+          consumer.accept(new ArchivedMessage(timestamp, channelName, username, message, color, isMeMessage));
+        }
+      }
+      buffer.compact();
+    }
+    // Anything left is the start of a record that was being written when the game closed.
+    return true;
+  }
+
+  private static String readString(ByteBuffer data, int length) {
+    String string = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+    data.position(data.position() + length);
+    return string;
+  }
+}
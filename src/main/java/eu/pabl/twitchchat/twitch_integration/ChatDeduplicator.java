@@ -0,0 +1,144 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import net.minecraft.text.Text;
+
+/**
+ * Spots messages that repeat within a sliding window, so that emote walls can be collapsed into a single chat line
+ * with a counter instead of flooding the chat.
+ *
+ * Messages are compared by a hash of their normalized text: case, punctuation and repeated words are ignored, so
+ * "LUL LUL LUL", "lul lul" and "LUL!" all count as the same message. Only used from the client thread.
+ */
+public class ChatDeduplicator {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * A message that was seen recently. The chat line it was shown as is kept so that it can be updated in place.
+   */
+  public static class Entry {
+    private int count;
+    private long lastSeen;
+    // The line as it was first shown, and the line that is in the chat right now (with its counter).
+    private Text line;
+    private Text shownLine;
+
+    public int getCount() {
+      return count;
+    }
+
+    public Text getLine() {
+      return line;
+    }
+
+    public Text getShownLine() {
+      return shownLine;
+    }
+
+    public void setLine(Text line, Text shownLine) {
+      this.line = line;
+      this.shownLine = shownLine;
+    }
+
+    /**
+     * Starts counting again, for when the chat line can't be updated anymore.
+     */
+    public void restart() {
+      count = 1;
+      line = null;
+      shownLine = null;
+    }
+  }
+
+  private final int maxEntries;
+  // Access order keeps the least recently repeated message first, so expired entries are always at the head.
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  public ChatDeduplicator(int maxEntries) {
+    this.maxEntries = Math.max(maxEntries, 1);
+  }
+
+  /**
+   * Counts a message.
+   * @param windowMillis how long after its last repetition a message is still considered a repeat.
+   * @return the message's entry, with a count of 1 if it's the first time it's been seen in the window.
+   */
+  public Entry track(String channel, String message, long now, long windowMillis) {
+    evictExpired(now, windowMillis);
+
+    long key = hash(channel, message);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+      if (entries.size() > maxEntries) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        eldest.next();
+        eldest.remove();
+      }
+    }
+    entry.count++;
+    entry.lastSeen = now;
+    return entry;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  private void evictExpired(long now, long windowMillis) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext() && now - iterator.next().lastSeen > windowMillis) {
+      iterator.remove();
+    }
+  }
+
+  /**
+   * FNV-1a over the normalized words of the message, computed without building the normalized string.
+   */
+  static long hash(String channel, String message) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < channel.length(); i++) {
+      hash = (hash ^ channel.charAt(i)) * FNV_PRIME;
+    }
+
+    long previousWord = 0;
+    boolean empty = true;
+    int i = 0;
+    while (i < message.length()) {
+      long word = FNV_OFFSET_BASIS;
+      boolean wordEmpty = true;
+      while (i < message.length()) {
+        int codePoint = message.codePointAt(i);
+        i += Character.charCount(codePoint);
+        if (Character.isWhitespace(codePoint)) {
+          break;
+        }
+        if (Character.isLetterOrDigit(codePoint)) {
+          word = (word ^ Character.toLowerCase(codePoint)) * FNV_PRIME;
+          wordEmpty = false;
+        }
+      }
+      if (wordEmpty || word == previousWord) {
+        continue;
+      }
+      hash = (hash ^ word) * FNV_PRIME;
+      previousWord = word;
+      empty = false;
+    }
+
+    if (empty) {
+      // Nothing but punctuation, compare it as is.
+      for (int j = 0; j < message.length(); j++) {
+        hash = (hash ^ message.charAt(j)) * FNV_PRIME;
+      }
+    }
+    return hash;
+  }
+}
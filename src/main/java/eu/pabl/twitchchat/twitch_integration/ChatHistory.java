@@ -0,0 +1,232 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The last messages of the session, searchable by chatter and by word without going through all of them.
+ *
+ * Messages live in a ring buffer and are numbered in the order they arrived. The inverted index maps every word (and
+ * every chatter, as "@name") to the ascending numbers of the messages that have it. When a message is overwritten,
+ * it's the oldest one, so it's always at the front of its postings and removing it is cheap.
+ * Used from the IRC thread (adding) and the client thread (searching).
+ */
+public class ChatHistory {
+  private static final int MIN_WORD_LENGTH = 2;
+
+  /**
+   * Ascending message numbers, appended at the back and removed from the front.
+   */
+  private static class Postings {
+    long[] sequences = new long[4];
+    int start;
+    int end;
+
+    void add(long sequence) {
+      if (end > start && sequences[end - 1] == sequence) {
+        return; // The same word twice in one message.
+      }
+      if (end == sequences.length) {
+        if (start > sequences.length / 2) {
+          System.arraycopy(sequences, start, sequences, 0, end - start);
+        } else {
+          sequences = Arrays.copyOfRange(sequences, start, start + Math.max(4, (end - start) * 2));
+        }
+        end -= start;
+        start = 0;
+      }
+      sequences[end++] = sequence;
+    }
+
+    void removeFirst(long sequence) {
+      if (end > start && sequences[start] == sequence) {
+        start++;
+      }
+    }
+
+    int size() {
+      return end - start;
+    }
+
+    boolean contains(long sequence) {
+      return Arrays.binarySearch(sequences, start, end, sequence) >= 0;
+    }
+  }
+
+  /**
+   * A page of results, newest page first, with the messages of the page from oldest to newest.
+   */
+  public record Page(List<ArchivedMessage> messages, int page, int pageCount) {
+  }
+
+  private final ArchivedMessage[] messages;
+  // When each message arrived, always ascending unlike the Twitch timestamps.
+  private final long[] receivedAt;
+  private final Map<String, Postings> index = new HashMap<>();
+  private long nextSequence;
+
+  public ChatHistory(int capacity) {
+    this.messages = new ArchivedMessage[Math.max(capacity, 1)];
+    this.receivedAt = new long[messages.length];
+  }
+
+  public synchronized void add(ArchivedMessage message, long now) {
+    long sequence = nextSequence++;
+    int slot = (int) (sequence % messages.length);
+    ArchivedMessage evicted = messages[slot];
+    if (evicted != null) {
+      long evictedSequence = sequence - messages.length;
+      forEachTerm(evicted, term -> {
+        Postings postings = index.get(term);
+        if (postings != null) {
+          postings.removeFirst(evictedSequence);
+          if (postings.size() == 0) {
+            index.remove(term);
+          }
+        }
+      });
+    }
+
+    messages[slot] = message;
+    receivedAt[slot] = now;
+    forEachTerm(message, term -> index.computeIfAbsent(term, t -> new Postings()).add(sequence));
+  }
+
+  public synchronized int size() {
+    return (int) Math.min(nextSequence, messages.length);
+  }
+
+  public synchronized void clear() {
+    Arrays.fill(messages, null);
+    index.clear();
+    nextSequence = 0;
+  }
+
+  /**
+   * @param page 1 for the newest messages.
+   */
+  public synchronized Page recent(int page, int pageSize) {
+    long oldest = oldestSequence();
+    int total = (int) (nextSequence - oldest);
+    return page(total, page, pageSize, i -> nextSequence - 1 - i);
+  }
+
+  /**
+   * The messages received since a time, oldest first.
+   * @param page 1 for the oldest messages after the time.
+   */
+  public synchronized Page since(long time, int page, int pageSize) {
+    // Binary search on the arrival times, which only go up.
+    long low = oldestSequence();
+    long high = nextSequence;
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      if (receivedAt[(int) (middle % messages.length)] < time) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    long first = low;
+    int total = (int) (nextSequence - first);
+    int pageCount = Math.max(1, (total + pageSize - 1) / pageSize);
+    page = Math.min(Math.max(page, 1), pageCount);
+
+    List<ArchivedMessage> results = new ArrayList<>(pageSize);
+    long from = first + (long) (page - 1) * pageSize;
+    for (long sequence = from; sequence < Math.min(from + pageSize, nextSequence); sequence++) {
+      results.add(messages[(int) (sequence % messages.length)]);
+    }
+    return new Page(results, page, pageCount);
+  }
+
+  /**
+   * Finds the messages that have every word of the query. Words starting with @ match the chatter instead.
+   * @param page 1 for the newest matches.
+   */
+  public synchronized Page search(String query, int page, int pageSize) {
+    List<Postings> terms = new ArrayList<>();
+    boolean[] unknownTerm = {false};
+    forEachTerm(query, true, term -> {
+      Postings postings = index.get(term);
+      if (postings == null) {
+        unknownTerm[0] = true;
+      } else {
+        terms.add(postings);
+      }
+    });
+    if (terms.isEmpty() || unknownTerm[0]) {
+      return new Page(List.of(), 1, 1);
+    }
+
+    // Walk the rarest term and check the others with binary searches.
+    terms.sort((a, b) -> Integer.compare(a.size(), b.size()));
+    Postings rarest = terms.get(0);
+    long[] matches = new long[rarest.size()];
+    int matchCount = 0;
+    for (int i = rarest.end - 1; i >= rarest.start; i--) {
+      long sequence = rarest.sequences[i];
+      boolean matchesAll = true;
+      for (int j = 1; j < terms.size() && matchesAll; j++) {
+        matchesAll = terms.get(j).contains(sequence);
+      }
+      if (matchesAll) {
+        matches[matchCount++] = sequence;
+      }
+    }
+
+    long[] newestFirst = matches;
+    return page(matchCount, page, pageSize, i -> newestFirst[i]);
+  }
+
+  private Page page(int total, int page, int pageSize, IntToLongFunction newestFirst) {
+    int pageCount = Math.max(1, (total + pageSize - 1) / pageSize);
+    page = Math.min(Math.max(page, 1), pageCount);
+    List<ArchivedMessage> results = new ArrayList<>(pageSize);
+    for (int i = (page - 1) * pageSize; i < Math.min(page * pageSize, total); i++) {
+      results.add(messages[(int) (newestFirst.applyAsLong(i) % messages.length)]);
+    }
+    // Shown like the chat, newest at the bottom.
+    Collections.reverse(results);
+    return new Page(results, page, pageCount);
+  }
+
+  private long oldestSequence() {
+    return Math.max(0, nextSequence - messages.length);
+  }
+
+  private static void forEachTerm(ArchivedMessage message, Consumer<String> consumer) {
+    consumer.accept("@" + message.username().toLowerCase(Locale.ROOT));
+    forEachTerm(message.message(), false, consumer);
+  }
+
+  /**
+   * Splits text into lowercase words of letters and digits.
+   * @param allowUsers whether "@name" is kept as a chatter term, only in queries.
+   */
+  private static void forEachTerm(String text, boolean allowUsers, Consumer<String> consumer) {
+    int i = 0;
+    while (i < text.length()) {
+      while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i)) && text.charAt(i) != '@') {
+        i++;
+      }
+      boolean user = i < text.length() && text.charAt(i) == '@';
+      int start = user ? ++i : i;
+      while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || (user && text.charAt(i) == '_'))) {
+        i++;
+      }
+      if (i - start < (user ? 1 : MIN_WORD_LENGTH)) {
+        continue;
+      }
+      String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+      consumer.accept(user && allowUsers ? "@" + word : word);
+    }
+  }
+}
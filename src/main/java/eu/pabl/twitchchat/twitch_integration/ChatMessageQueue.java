@@ -0,0 +1,69 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hands messages from the IRC thread over to the client thread.
+ * Producers never block: once the queue is full the configured {@link OverflowPolicy} decides what gets thrown away.
+ */
+public class ChatMessageQueue {
+  public enum OverflowPolicy {
+    // Throw away the oldest queued message to make room for the new one.
+    DROP_OLDEST,
+    // Keep what is already queued and fold every message that doesn't fit into a single "+N messages" line.
+    COALESCE
+  }
+
+  private final ConcurrentLinkedQueue<TwitchMessage> queue = new ConcurrentLinkedQueue<>();
+  // Kept apart from the queue because ConcurrentLinkedQueue#size() walks the whole queue.
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicInteger coalesced = new AtomicInteger();
+
+  public void offer(TwitchMessage message, int capacity, OverflowPolicy overflowPolicy) {
+    if (size.incrementAndGet() > capacity) {
+      if (overflowPolicy == OverflowPolicy.COALESCE) {
+        size.decrementAndGet();
+        coalesced.incrementAndGet();
+        TwitchMetrics.messageDropped();
+        return;
+      }
+      if (queue.poll() != null) {
+        size.decrementAndGet();
+        TwitchMetrics.messageDropped();
+      }
+    }
+    queue.offer(message);
+  }
+
+  /**
+   * Delivers at most {@code budget} messages to the consumer.
+   * @return the number of messages that were coalesced since the last time the queue was emptied, or 0 if the queue
+   * still has messages left.
+   */
+  public int drain(int budget, Consumer<TwitchMessage> consumer) {
+    for (int i = 0; i < budget; i++) {
+      TwitchMessage message = queue.poll();
+      if (message == null) {
+        break;
+      }
+      size.decrementAndGet();
+      consumer.accept(message);
+    }
+
+    // Only report the coalesced messages once we've caught up, so that the summary goes after the lines it refers to.
+    return queue.isEmpty() ? coalesced.getAndSet(0) : 0;
+  }
+
+  public int size() {
+    return Math.max(size.get(), 0);
+  }
+
+  public void clear() {
+    while (queue.poll() != null) {
+      size.decrementAndGet();
+    }
+    coalesced.set(0);
+  }
+}
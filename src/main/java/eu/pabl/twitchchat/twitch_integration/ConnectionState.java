@@ -0,0 +1,11 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+public enum ConnectionState {
+  // Connecting for the first time after /twitch enable.
+  CONNECTING,
+  CONNECTED,
+  // The connection was lost and we're waiting to try again.
+  RECONNECTING,
+  // /twitch disable, or the bot was never started.
+  STOPPED
+}
@@ -0,0 +1,77 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Folds gift bombs into a single line. Twitch sends a submysterygift for "gifted 50 subs" and then a subgift for
+ * every one of the 50 chatters that got one, the subgifts that follow a gift bomb are swallowed. They're matched to
+ * their gift bomb by the community gift id they all share, so anonymous gift bombs are kept apart too.
+ */
+class GiftBombTracker {
+  // Gift bombs still waiting for some of their subgifts. Bounded in case Twitch never sends them all.
+  private static final int MAX_PENDING = 100;
+  // Twitch sends the subgifts right after their gift bomb, the ones that never come are forgotten after this.
+  private static final long PENDING_TIMEOUT_MILLIS = 30_000;
+
+  private static class PendingBomb {
+    int remaining;
+    long lastSeen;
+
+    PendingBomb(int remaining, long lastSeen) {
+      this.remaining = remaining;
+      this.lastSeen = lastSeen;
+    }
+  }
+
+  // "channel#community gift id" to the gift bomb.
+  private final Map<String, PendingBomb> pending = new LinkedHashMap<>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, PendingBomb> eldest) {
+      return size() > MAX_PENDING;
+    }
+  };
+
+  /**
+   * @return whether the event is a subgift of a gift bomb that has already been shown.
+   */
+  public synchronized boolean absorb(TwitchEvent event) {
+    if (event.type() != TwitchEvent.Type.GIFT && event.type() != TwitchEvent.Type.GIFT_BOMB) {
+      return false;
+    }
+    pending.values().removeIf(bomb -> event.timestamp() - bomb.lastSeen > PENDING_TIMEOUT_MILLIS);
+    String key = key(event);
+    if (key == null) {
+      return false;
+    }
+    if (event.type() == TwitchEvent.Type.GIFT_BOMB) {
+      pending.put(key, new PendingBomb(event.count(), event.timestamp()));
+      return false;
+    }
+
+    PendingBomb bomb = pending.get(key);
+    if (bomb == null) {
+      return false;
+    }
+    if (bomb.remaining <= 1) {
+      pending.remove(key);
+    } else {
+      bomb.remaining--;
+      bomb.lastSeen = event.timestamp();
+    }
+    return true;
+  }
+
+  public synchronized void remove(String channel) {
+    pending.keySet().removeIf(key -> key.startsWith(channel + "#"));
+  }
+
+  // Null for gifts that aren't part of a gift bomb.
+  private static String key(TwitchEvent event) {
+    String giftId = event.tags().get("msg-param-community-gift-id");
+    if (giftId == null) {
+      giftId = event.tags().get("msg-param-origin-id");
+    }
+    return giftId != null ? event.channel() + "#" + giftId : null;
+  }
+}
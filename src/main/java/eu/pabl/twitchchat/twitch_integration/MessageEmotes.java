@@ -0,0 +1,74 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Where the emotes are in a message, from its "emotes" tag. Kept on its own so that a message waiting to be shown
+ * doesn't keep the rest of its tags, or the IRC line they were parsed from, alive.
+ */
+public final class MessageEmotes {
+  public static final MessageEmotes NONE = new MessageEmotes(new String[0], new int[0]);
+
+  private final String[] ids;
+  // Triples of (first code point, last code point, index in ids), sorted by position.
+  private final int[] ranges;
+
+  MessageEmotes(String[] ids, int[] ranges) {
+    this.ids = ids;
+    this.ranges = ranges;
+  }
+
+  public int getCount() {
+    return ranges.length / 3;
+  }
+
+  /**
+   * @return the index of the first code point of the nth emote in the message.
+   */
+  public int getStart(int n) {
+    return ranges[n * 3];
+  }
+
+  /**
+   * @return the index of the last code point (inclusive) of the nth emote in the message.
+   */
+  public int getEnd(int n) {
+    return ranges[n * 3 + 1];
+  }
+
+  public String getId(int n) {
+    return ids[ranges[n * 3 + 2]];
+  }
+
+  /**
+   * Leaves out the emotes that had any of their code points changed, so that a redacted emote isn't drawn anyway.
+   * @param redacted the message with the same number of code points, like the keyword filter redacts it.
+   */
+  public MessageEmotes withoutChanged(String original, String redacted) {
+    BitSet changed = new BitSet();
+    for (int i = 0, j = 0, codePoint = 0; i < original.length() && j < redacted.length(); codePoint++) {
+      int originalCodePoint = original.codePointAt(i);
+      int redactedCodePoint = redacted.codePointAt(j);
+      if (originalCodePoint != redactedCodePoint) {
+        changed.set(codePoint);
+      }
+      i += Character.charCount(originalCodePoint);
+      j += Character.charCount(redactedCodePoint);
+    }
+    if (changed.isEmpty()) {
+      return this;
+    }
+
+    int[] kept = new int[ranges.length];
+    int keptLength = 0;
+    for (int n = 0; n < getCount(); n++) {
+      int firstChanged = changed.nextSetBit(getStart(n));
+      if (firstChanged == -1 || firstChanged > getEnd(n)) {
+        System.arraycopy(ranges, n * 3, kept, keptLength, 3);
+        keptLength += 3;
+      }
+    }
+    return keptLength == ranges.length ? this : new MessageEmotes(ids, Arrays.copyOf(kept, keptLength));
+  }
+}
@@ -0,0 +1,447 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A connection made for Twitch's IRC only, much lighter than PircBotX. One non-blocking socket is read and written by
+ * the thread that called connect(), TLS is done with an SSLEngine.
+ *
+ * Incoming bytes go into a buffer that's reused for the whole connection and are split into lines in place. Every
+ * line becomes a single String, and its tags, nick, command and channel are found by index instead of being copied
+ * out of it. The listener is called right from the connection thread, in the order lines arrive.
+ * Lines to send are queued from any thread and written by the connection thread, which is woken up for them.
+ */
+public class NioTransport implements TwitchTransport {
+  private static final TwitchLogger LOG = TwitchLogger.get("irc");
+  // Twitch lines are a few kilobytes at most, even with every tag.
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+  private static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+  // Twitch sends a PING about every 5 minutes, hearing nothing for longer than this means the connection is gone.
+  private static final long READ_TIMEOUT_MILLIS = 6 * 60 * 1000;
+  private static final long SELECT_TIMEOUT_MILLIS = 1000;
+  // How long close() waits for the lines that are still queued to be sent.
+  private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+  private static final String ACTION_PREFIX = "\u0001ACTION ";
+
+  private final String host;
+  private final int port;
+  private final boolean tls;
+  private final String username;
+  private final String oauthKey;
+  private final Listener listener;
+  private final ConcurrentLinkedQueue<String> outgoing = new ConcurrentLinkedQueue<>();
+  private volatile Selector selector;
+  private volatile boolean connected;
+  private volatile boolean quitting;
+  private volatile boolean closed;
+  private volatile long closeDeadline;
+
+  // Only touched from the connection thread.
+  private SocketChannel socket;
+  private SelectionKey key;
+  private SSLEngine engine; // null without TLS
+  // Without TLS the network buffers are the application buffers.
+  private ByteBuffer netIn;
+  private ByteBuffer netOut;
+  private ByteBuffer appIn; // On the heap, lines are decoded right from its array.
+  private ByteBuffer appOut;
+  // How much of appIn has already been searched for the end of a line.
+  private int scannedTo;
+  // Nearly every line is for the same few channels, so the last channel name is reused instead of copied again.
+  private String lastChannel;
+
+  public NioTransport(String host, int port, boolean tls, String username, String oauthKey, Listener listener) {
+    this.host = host;
+    this.port = port;
+    this.tls = tls;
+    this.username = username;
+    this.oauthKey = oauthKey;
+    this.listener = listener;
+  }
+
+  @Override
+  public void connect() throws IOException {
+    if (closed) {
+      return;
+    }
+    boolean loggedIn = false;
+    Exception cause = null;
+    try (Selector selector = Selector.open(); SocketChannel socket = SocketChannel.open()) {
+      this.selector = selector;
+      this.socket = socket;
+      setUpBuffers();
+      socket.configureBlocking(false);
+      socket.connect(new InetSocketAddress(host, port));
+      key = socket.register(selector, SelectionKey.OP_CONNECT);
+
+      // Whatever was queued for the last connection is dropped, like PircBotX does.
+      outgoing.clear();
+      // See https://dev.twitch.tv/docs/irc/authenticate-bot/ and https://dev.twitch.tv/docs/irc/capabilities/
+      outgoing.add("CAP REQ :twitch.tv/membership twitch.tv/tags twitch.tv/commands");
+      outgoing.add("PASS " + oauthKey);
+      outgoing.add("NICK " + username);
+
+      long lastRead = System.currentTimeMillis();
+      while (true) {
+        selector.select(closed ? Math.clamp(closeDeadline - System.currentTimeMillis(), 1L, SELECT_TIMEOUT_MILLIS)
+            : SELECT_TIMEOUT_MILLIS);
+        selector.selectedKeys().clear();
+        if (key.isValid() && key.isConnectable() && socket.finishConnect()) {
+          key.interestOps(SelectionKey.OP_READ);
+          if (engine != null) {
+            engine.beginHandshake();
+          }
+        }
+        if (key.isValid() && key.isReadable() && read()) {
+          lastRead = System.currentTimeMillis();
+          loggedIn |= connected;
+        }
+        if (socket.isConnected()) {
+          flush();
+          if (quitting && outgoing.isEmpty() && appOut.position() == 0 && netOut.position() == 0) {
+            break;
+          }
+        }
+        if (closed && (!socket.isConnected() || System.currentTimeMillis() >= closeDeadline)) {
+          break;
+        }
+        if (System.currentTimeMillis() - lastRead > READ_TIMEOUT_MILLIS) {
+          throw new IOException("Nothing received from " + host + " for " + READ_TIMEOUT_MILLIS / 1000 + " seconds");
+        }
+      }
+    } catch (IOException e) {
+      if (!loggedIn) {
+        throw e;
+      }
+      cause = e;
+    } finally {
+      this.selector = null;
+      connected = false;
+      quitting = false;
+      if (loggedIn) {
+        listener.onDisconnect(cause);
+      }
+    }
+  }
+
+  private void setUpBuffers() throws IOException {
+    scannedTo = 0;
+    lastChannel = null;
+    if (!tls) {
+      engine = null;
+      appIn = netIn = ByteBuffer.allocate(MAX_LINE_LENGTH + PLAIN_BUFFER_SIZE);
+      appOut = netOut = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+      return;
+    }
+    try {
+      engine = SSLContext.getDefault().createSSLEngine(host, port);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("TLS isn't available", e);
+    }
+    engine.setUseClientMode(true);
+    // Check that the certificate is for the host, which SSLEngine doesn't do by default.
+    SSLParameters parameters = engine.getSSLParameters();
+    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+    engine.setSSLParameters(parameters);
+    SSLSession session = engine.getSession();
+    netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+    netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+    // Always room for one more TLS record after the longest unfinished line.
+    appIn = ByteBuffer.allocate(MAX_LINE_LENGTH + session.getApplicationBufferSize());
+    appOut = ByteBuffer.allocate(session.getApplicationBufferSize());
+  }
+
+  /**
+   * @return whether anything was read.
+   */
+  private boolean read() throws IOException {
+    int read = socket.read(netIn);
+    if (read == -1) {
+      throw new EOFException("The server closed the connection");
+    }
+    if (read == 0) {
+      return false;
+    }
+    if (engine != null) {
+      unwrap();
+    }
+    splitLines();
+    return true;
+  }
+
+  private void unwrap() throws IOException {
+    netIn.flip();
+    try {
+      while (netIn.hasRemaining()) {
+        SSLEngineResult result = engine.unwrap(netIn, appIn);
+        runDelegatedTasks();
+        switch (result.getStatus()) {
+          case BUFFER_UNDERFLOW -> {
+            // The rest of the record hasn't arrived yet.
+            return;
+          }
+          case BUFFER_OVERFLOW -> {
+            splitLines();
+            continue;
+          }
+          case CLOSED -> throw new EOFException("The server closed the connection");
+          case OK -> {
+          }
+        }
+        if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+          flush();
+        } else if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+          return;
+        }
+      }
+    } finally {
+      netIn.compact();
+    }
+  }
+
+  /**
+   * Handles every complete line in appIn, and moves the unfinished one to its start.
+   */
+  private void splitLines() throws IOException {
+    byte[] bytes = appIn.array();
+    int end = appIn.position();
+    int lineStart = 0;
+    for (int i = scannedTo; i < end; i++) {
+      if (bytes[i] == '\n') {
+        int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+        if (lineEnd > lineStart) {
+          handleLine(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+        }
+        lineStart = i + 1;
+      }
+    }
+    System.arraycopy(bytes, lineStart, bytes, 0, end - lineStart);
+    appIn.position(end - lineStart);
+    scannedTo = appIn.position();
+    if (scannedTo >= MAX_LINE_LENGTH) {
+      throw new IOException("Received a line longer than " + MAX_LINE_LENGTH + " bytes");
+    }
+  }
+
+  /**
+   * Parses "@tags :nick!user@host COMMAND #channel :parameter", every part but the command being optional.
+   */
+  private void handleLine(String line) {
+    int position = 0;
+    int tagsEnd = -1;
+    if (line.startsWith("@")) {
+      tagsEnd = line.indexOf(' ');
+      if (tagsEnd == -1) {
+        return;
+      }
+      position = tagsEnd + 1;
+    }
+    int nickStart = -1;
+    int nickEnd = -1;
+    if (line.startsWith(":", position)) {
+      int prefixEnd = line.indexOf(' ', position);
+      if (prefixEnd == -1) {
+        return;
+      }
+      nickStart = position + 1;
+      int bang = line.indexOf('!', nickStart);
+      nickEnd = bang != -1 && bang < prefixEnd ? bang : prefixEnd;
+      position = prefixEnd + 1;
+    }
+    int commandStart = position;
+    int commandEnd = line.indexOf(' ', commandStart);
+    if (commandEnd == -1) {
+      commandEnd = line.length();
+    }
+    int parameterStart = line.indexOf(" :", commandEnd);
+    String parameter = parameterStart != -1 ? line.substring(parameterStart + 2) : null;
+    String channel = null;
+    if (commandEnd + 1 < line.length() && line.charAt(commandEnd + 1) == '#') {
+      int channelEnd = line.indexOf(' ', commandEnd + 1);
+      channel = channel(line, commandEnd + 2, channelEnd != -1 ? channelEnd : line.length());
+    }
+
+    try {
+      if (isCommand(line, commandStart, commandEnd, "PRIVMSG")) {
+        if (channel == null || nickStart == -1 || parameter == null) {
+          return;
+        }
+        TwitchMessageTags tags = tagsEnd != -1 ? TwitchMessageTags.parse(line, 1, tagsEnd) : TwitchMessageTags.EMPTY;
+        boolean isAction = parameter.startsWith(ACTION_PREFIX);
+        String message = isAction
+            ? parameter.substring(ACTION_PREFIX.length(), parameter.length() - (parameter.endsWith("\u0001") ? 1 : 0))
+            : parameter;
+        listener.onMessage(channel, line.substring(nickStart, nickEnd), message, tags, isAction);
+      } else if (isCommand(line, commandStart, commandEnd, "PING")) {
+        // We MUST respond to this or else we will get kicked
+        send(parameter != null ? "PONG :" + parameter : "PONG");
+      } else if (isCommand(line, commandStart, commandEnd, "001")) {
+        connected = true;
+        listener.onConnect();
+      } else if (isCommand(line, commandStart, commandEnd, "JOIN")) {
+        if (channel != null && nickStart != -1) {
+          listener.onJoin(channel, line.substring(nickStart, nickEnd));
+        }
+      } else if (!Character.isDigit(line.charAt(commandStart)) && !isCommand(line, commandStart, commandEnd, "CAP")
+          && !isCommand(line, commandStart, commandEnd, "PART") && !isCommand(line, commandStart, commandEnd, "PONG")) {
+        TwitchMessageTags tags = tagsEnd != -1 ? TwitchMessageTags.parse(line, 1, tagsEnd) : TwitchMessageTags.EMPTY;
+        listener.onCommand(line.substring(commandStart, commandEnd), channel, parameter, tags);
+      }
+    } catch (RuntimeException e) {
+      // A bug handling one line shouldn't take the connection down.
+      LOG.error("Couldn't handle the IRC line {}", line, e);
+    }
+  }
+
+  private static boolean isCommand(String line, int start, int end, String command) {
+    return end - start == command.length() && line.startsWith(command, start);
+  }
+
+  private String channel(String line, int start, int end) {
+    String last = lastChannel;
+    if (last != null && last.length() == end - start && line.startsWith(last, start)) {
+      return last;
+    }
+    lastChannel = line.substring(start, end);
+    return lastChannel;
+  }
+
+  /**
+   * Writes as much of the queued lines as the socket takes right now, the rest goes out when it's writable again.
+   */
+  private void flush() throws IOException {
+    if (engine == null) {
+      // appOut is netOut, keep filling it for as long as the socket takes everything.
+      do {
+        fillAppOut();
+      } while (writeNet() && !outgoing.isEmpty());
+    } else {
+      while (true) {
+        HandshakeStatus handshake = engine.getHandshakeStatus();
+        boolean handshaking = handshake != HandshakeStatus.NOT_HANDSHAKING && handshake != HandshakeStatus.FINISHED;
+        if (handshaking && handshake != HandshakeStatus.NEED_WRAP) {
+          // Waiting for the server, our lines go out once the handshake is done.
+          break;
+        }
+        if (!handshaking) {
+          fillAppOut();
+        }
+        appOut.flip();
+        SSLEngineResult result;
+        try {
+          result = engine.wrap(appOut, netOut);
+        } finally {
+          appOut.compact();
+        }
+        runDelegatedTasks();
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+          throw new EOFException("The connection was closed");
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+          if (!writeNet()) {
+            break;
+          }
+          continue;
+        }
+        if (result.bytesProduced() == 0) {
+          break;
+        }
+      }
+    }
+    writeNet();
+    key.interestOps(SelectionKey.OP_READ | (netOut.position() > 0 ? SelectionKey.OP_WRITE : 0));
+  }
+
+  /**
+   * @return whether everything was written.
+   */
+  private boolean writeNet() throws IOException {
+    netOut.flip();
+    try {
+      socket.write(netOut);
+    } finally {
+      netOut.compact();
+    }
+    return netOut.position() == 0;
+  }
+
+  private void fillAppOut() {
+    String line;
+    while ((line = outgoing.peek()) != null) {
+      byte[] bytes = (line + "\r\n").getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > appOut.remaining()) {
+        if (appOut.position() > 0) {
+          break;
+        }
+        LOG.warn("Dropped a line too long to send: {}", line);
+      } else {
+        appOut.put(bytes);
+      }
+      outgoing.poll();
+    }
+  }
+
+  private void runDelegatedTasks() {
+    Runnable task;
+    while ((task = engine.getDelegatedTask()) != null) {
+      task.run();
+    }
+  }
+
+  private void send(String line) {
+    outgoing.add(line);
+    Selector selector = this.selector;
+    if (selector != null) {
+      selector.wakeup();
+    }
+  }
+
+  @Override
+  public boolean isConnected() {
+    return connected;
+  }
+
+  @Override
+  public void join(String channel) {
+    send("JOIN #" + channel);
+  }
+
+  @Override
+  public void part(String channel) {
+    send("PART #" + channel);
+  }
+
+  @Override
+  public void sendMessage(String channel, String message) {
+    send("PRIVMSG #" + channel + " :" + message);
+  }
+
+  @Override
+  public void disconnect() {
+    quitting = true;
+    send("QUIT");
+  }
+
+  @Override
+  public void close() {
+    // Like disconnect(), what's still queued is sent before leaving, but only for so long.
+    closeDeadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+    closed = true;
+    disconnect();
+  }
+}
@@ -0,0 +1,209 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import eu.pabl.twitchchat.TwitchChatMod;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import net.minecraft.text.Text;
+
+/**
+ * Sends our chat messages without going over Twitch's limits, see https://dev.twitch.tv/docs/irc/#rate-limits
+ *
+ * Twitch allows 20 messages every 30 seconds, or 100 in channels where we're the broadcaster, a moderator or a VIP.
+ * Going over them gets the account silently throttled, so messages that don't fit wait in a small queue (and the
+ * user is told about it) instead of being sent. Slow mode is waited out the same way in the channels that have it.
+ */
+public class OutboundMessageScheduler {
+  private static final long WINDOW_MILLIS = 30_000;
+  private static final int USER_LIMIT = 20;
+  private static final int ELEVATED_LIMIT = 100;
+
+  private record PendingMessage(String channel, String message) {}
+
+  private static class TokenBucket {
+    private final double capacity;
+    private final double tokensPerMilli;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(int capacity, long windowMillis) {
+      this.capacity = capacity;
+      this.tokensPerMilli = capacity / (double) windowMillis;
+      this.tokens = capacity;
+      this.lastRefill = System.currentTimeMillis();
+    }
+
+    void refill(long now) {
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+      lastRefill = now;
+    }
+
+    boolean hasToken() {
+      return tokens >= 1;
+    }
+
+    void take() {
+      tokens -= 1;
+    }
+
+    long millisUntilToken() {
+      return hasToken() ? 0 : (long) Math.ceil((1 - tokens) / tokensPerMilli);
+    }
+  }
+
+  // Every message counts towards the elevated limit, messages to channels where we aren't elevated also count
+  // towards the regular one.
+  private final TokenBucket userBucket = new TokenBucket(USER_LIMIT, WINDOW_MILLIS);
+  private final TokenBucket elevatedBucket = new TokenBucket(ELEVATED_LIMIT, WINDOW_MILLIS);
+  private final Set<String> elevatedChannels = ConcurrentHashMap.newKeySet();
+  private final Map<String, Long> slowModeMillis = new ConcurrentHashMap<>();
+  private final Map<String, Long> lastSent = new ConcurrentHashMap<>();
+  private final ArrayDeque<PendingMessage> queue = new ArrayDeque<>();
+  private final int queueCapacity;
+  private final BiConsumer<String, String> sender;
+  private final ScheduledExecutorService scheduler;
+  private boolean drainScheduled;
+  private boolean closed;
+
+  /**
+   * @param sender actually sends a message (channel, message), always called from the scheduler.
+   */
+  public OutboundMessageScheduler(int queueCapacity, BiConsumer<String, String> sender, ScheduledExecutorService scheduler) {
+    this.queueCapacity = queueCapacity;
+    this.sender = sender;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Updates our role in a channel from its USERSTATE badges.
+   */
+  public void setElevated(String channel, boolean elevated) {
+    if (elevated) {
+      elevatedChannels.add(channel);
+    } else {
+      elevatedChannels.remove(channel);
+    }
+  }
+
+  /**
+   * Updates a channel's slow mode from its ROOMSTATE. Broadcasters, moderators and VIPs aren't affected by it.
+   */
+  public void setSlowMode(String channel, int seconds) {
+    if (seconds > 0) {
+      slowModeMillis.put(channel, TimeUnit.SECONDS.toMillis(seconds));
+    } else {
+      slowModeMillis.remove(channel);
+    }
+  }
+
+  /**
+   * Sends a message now if the limits allow it, or queues it for later.
+   * @return false if the message was dropped because too many messages are already waiting.
+   */
+  public synchronized boolean submit(String channel, String message) {
+    if (closed) {
+      return false;
+    }
+    if (queue.isEmpty() && tryAcquire(channel)) {
+      scheduler.execute(() -> sender.accept(channel, message));
+      return true;
+    }
+
+    if (queue.size() >= queueCapacity) {
+      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.chat.rate_limit_dropped"));
+      return false;
+    }
+
+    if (queue.isEmpty()) {
+      long waitSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(millisUntilSendable(channel)));
+      TwitchChatMod.addNotification(Text.translatable("text.twitchchat.chat.rate_limit_delayed", waitSeconds));
+    }
+    queue.add(new PendingMessage(channel, message));
+    scheduleDrain();
+    return true;
+  }
+
+  /**
+   * Stops accepting messages, the ones that are already being sent still go out.
+   * @return how many messages that were waiting for the rate limits are dropped.
+   */
+  public synchronized int close() {
+    closed = true;
+    int dropped = queue.size();
+    queue.clear();
+    return dropped;
+  }
+
+  public synchronized int getQueuedCount() {
+    return queue.size();
+  }
+
+  private void drain() {
+    // Sending can block on the socket, so it's done without holding the lock submit() needs on the render thread.
+    List<PendingMessage> sendable = new ArrayList<>();
+    synchronized (this) {
+      drainScheduled = false;
+      PendingMessage next;
+      while (!closed && (next = queue.peek()) != null && tryAcquire(next.channel())) {
+        sendable.add(queue.poll());
+      }
+      if (!queue.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+    for (PendingMessage message : sendable) {
+      sender.accept(message.channel(), message.message());
+    }
+  }
+
+  private void scheduleDrain() {
+    if (drainScheduled || scheduler.isShutdown()) {
+      return;
+    }
+    drainScheduled = true;
+    long delay = Math.max(1, millisUntilSendable(queue.peek().channel()));
+    scheduler.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private boolean tryAcquire(String channel) {
+    long now = System.currentTimeMillis();
+    userBucket.refill(now);
+    elevatedBucket.refill(now);
+
+    boolean elevated = elevatedChannels.contains(channel);
+    if (!elevatedBucket.hasToken() || (!elevated && !userBucket.hasToken())
+        || (!elevated && millisUntilSlowModeEnds(channel, now) > 0)) {
+      return false;
+    }
+    elevatedBucket.take();
+    if (!elevated) {
+      userBucket.take();
+    }
+    lastSent.put(channel, now);
+    return true;
+  }
+
+  private long millisUntilSendable(String channel) {
+    long now = System.currentTimeMillis();
+    userBucket.refill(now);
+    elevatedBucket.refill(now);
+
+    long wait = elevatedBucket.millisUntilToken();
+    if (!elevatedChannels.contains(channel)) {
+      wait = Math.max(wait, Math.max(userBucket.millisUntilToken(), millisUntilSlowModeEnds(channel, now)));
+    }
+    return wait;
+  }
+
+  private long millisUntilSlowModeEnds(String channel, long now) {
+    Long slowMode = slowModeMillis.get(channel);
+    Long sent = lastSent.get(channel);
+    return slowMode == null || sent == null ? 0 : Math.max(0, sent + slowMode - now);
+  }
+}
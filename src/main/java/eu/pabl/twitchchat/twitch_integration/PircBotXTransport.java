@@ -0,0 +1,175 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.cap.EnableCapHandler;
+import org.pircbotx.delay.StaticDelay;
+import org.pircbotx.exception.IrcException;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.*;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+
+/**
+ * The connection through PircBotX, which runs the listener on the given executor.
+ */
+public class PircBotXTransport implements TwitchTransport {
+  private static final TwitchLogger LOG = TwitchLogger.get("irc");
+
+  private final PircBotX ircBot;
+  private final Listener listener;
+
+  public PircBotXTransport(String host, int port, boolean tls, String username, String oauthKey, Listener listener,
+                           ExecutorService listenerExecutor) {
+    this.listener = listener;
+    Configuration config = new Configuration.Builder()
+        .setAutoNickChange(false) //Twitch doesn't support multiple users
+        .setOnJoinWhoEnabled(false) //Twitch doesn't support WHO command
+        .setEncoding(StandardCharsets.UTF_8) // Use UTF-8 on Windows.
+        .setCapEnabled(true)
+        .addCapHandler(new EnableCapHandler("twitch.tv/membership")) //Twitch by default doesn't send JOIN, PART, and NAMES unless you request it, see https://dev.twitch.tv/docs/irc/guide/#twitch-irc-capabilities
+        .addCapHandler(new EnableCapHandler("twitch.tv/tags"))
+        .addCapHandler(new EnableCapHandler("twitch.tv/commands"))
+
+        // Twitch by default, but it can be pointed at a local server for testing.
+        .addServer(host, port)
+        .setSocketFactory(tls ? SSLSocketFactory.getDefault() : SocketFactory.getDefault())
+        .setName(username)
+        .setServerPassword(oauthKey)
+        .addListener(new Adapter())
+        .setListenerManager(new ThreadedListenerManager(listenerExecutor))
+        .setAutoSplitMessage(false)
+        // OutboundMessageScheduler already keeps us under Twitch's limits, PircBotX's own delay would only add to it.
+        .setMessageDelay(new StaticDelay(0))
+        .buildConfiguration();
+    this.ircBot = new PircBotX(config);
+  }
+
+  @Override
+  public void connect() throws IOException {
+    try {
+      ircBot.startBot();
+    } catch (IrcException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public boolean isConnected() {
+    return ircBot.isConnected();
+  }
+
+  @Override
+  public void join(String channel) {
+    ircBot.sendIRC().joinChannel("#" + channel);
+    ircBot.sendCAP().request("twitch.tv/membership", "twitch.tv/tags", "twitch.tv/commands"); // Ask for capabilities
+  }
+
+  @Override
+  public void part(String channel) {
+    ircBot.sendRaw().rawLine("PART #" + channel);
+  }
+
+  @Override
+  public void sendMessage(String channel, String message) {
+    ircBot.sendIRC().message("#" + channel, message);
+  }
+
+  @Override
+  public void disconnect() {
+    ircBot.sendIRC().quitServer();
+  }
+
+  @Override
+  public void close() {
+    ircBot.stopBotReconnect();
+    ircBot.close();
+  }
+
+  private static String channelName(String ircChannel) {
+    if (ircChannel == null || ircChannel.isEmpty()) {
+      return null;
+    }
+    return ircChannel.startsWith("#") ? ircChannel.substring(1) : ircChannel;
+  }
+
+  private class Adapter extends ListenerAdapter {
+    @Override
+    public void onConnect(ConnectEvent event) {
+      listener.onConnect();
+    }
+
+    @Override
+    public void onDisconnect(DisconnectEvent event) {
+      listener.onDisconnect(event.getDisconnectException());
+    }
+
+    @Override
+    public void onMessage(MessageEvent event) {
+      User user = event.getUser();
+      if (user == null) {
+        LOG.debug("NON-USER MESSAGE: {}", event.getMessage());
+        return;
+      }
+      ImmutableMap<String, String> v3Tags = event.getV3Tags();
+      if (v3Tags == null) {
+        LOG.debug("Message with no v3tags: {}", event.getMessage());
+        return;
+      }
+      listener.onMessage(channelName(event.getChannel().getName()), user.getNick(), event.getMessage(),
+          TwitchMessageTags.of(v3Tags), false);
+    }
+
+    // Handle /me
+    @Override
+    public void onAction(ActionEvent event) {
+      User user = event.getUser();
+      if (user == null) {
+        LOG.debug("NON-USER ACTION: {}", event.getMessage());
+        return;
+      }
+      String channel = event.getChannel() != null ? channelName(event.getChannel().getName()) : null;
+      listener.onMessage(channel, user.getNick(), event.getMessage(), TwitchMessageTags.EMPTY, true);
+    }
+
+    @Override
+    public void onJoin(JoinEvent event) {
+      User user = event.getUser();
+      if (user != null) {
+        listener.onJoin(channelName(event.getChannel().getName()), user.getNick());
+      }
+    }
+
+    @Override
+    public void onUnknown(UnknownEvent event) {
+      List<String> params = event.getParsedLine();
+      listener.onCommand(event.getCommand(), channelName(event.getTarget()), params.size() > 1 ? params.get(1) : null,
+          TwitchMessageTags.of(event.getTags()));
+    }
+
+    @Override
+    public void onNotice(NoticeEvent event) {
+      listener.onCommand("NOTICE", null, event.getNotice(), TwitchMessageTags.EMPTY);
+    }
+
+    @Override
+    public void onKick(KickEvent event) {
+      listener.onCommand("KICK", channelName(event.getChannel().getName()), event.getReason(), TwitchMessageTags.EMPTY);
+    }
+
+    /**
+     * We MUST respond to this or else we will get kicked
+     */
+    @Override
+    public void onPing(PingEvent event) {
+      ircBot.sendRaw().rawLineNow(String.format("PONG %s\r\n", event.getPingValue()));
+    }
+  }
+}
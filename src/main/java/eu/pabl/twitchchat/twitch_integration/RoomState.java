@@ -0,0 +1,36 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+/**
+ * The chat modes of a channel, from its ROOMSTATE messages. See https://dev.twitch.tv/docs/irc/tags/#roomstate-tags
+ * @param followersOnlyMinutes how long chatters must have followed for, or -1 when followers-only mode is off.
+ * @param slowSeconds how long chatters must wait between messages, 0 when slow mode is off.
+ */
+public record RoomState(boolean emoteOnly, int followersOnlyMinutes, int slowSeconds, boolean subsOnly) {
+  public static final RoomState DEFAULT = new RoomState(false, -1, 0, false);
+
+  /**
+   * Applies a ROOMSTATE message. Twitch sends every tag when joining, but only the ones that changed afterwards.
+   */
+  public RoomState update(TwitchMessageTags tags) {
+    return new RoomState(
+        flag(tags.get("emote-only"), emoteOnly),
+        number(tags.get("followers-only"), followersOnlyMinutes),
+        number(tags.get("slow"), slowSeconds),
+        flag(tags.get("subs-only"), subsOnly));
+  }
+
+  private static boolean flag(String value, boolean current) {
+    return value == null ? current : value.equals("1");
+  }
+
+  private static int number(String value, int current) {
+    if (value == null) {
+      return current;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return current;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+/**
+ * A subscription, gift, raid or cheer, shown apart from the regular chat and never sampled or dropped.
+ * Most of them come from USERNOTICE, more at https://dev.twitch.tv/docs/irc/commands/#usernotice
+ *
+ * @param user the display name of who did it, or null for anonymous gifts.
+ * @param recipient who got the gifted sub, only for {@link Type#GIFT} when count is 1.
+ * @param count months for resubs, subs for gifts, viewers for raids and bits for cheers.
+ * @param message what the chatter wrote with it, or null.
+ * @param systemMessage Twitch's own description of the event, used for the ones we don't know about.
+ */
+public record TwitchEvent(Type type, long timestamp, String channel, String user, String recipient, int count,
+                          String message, String systemMessage, TwitchMessageTags tags) {
+  public enum Type {
+    SUB,
+    RESUB,
+    // One or more subs gifted to specific chatters.
+    GIFT,
+    // Subs gifted to random chatters of the community, followed by a GIFT for each of them.
+    GIFT_BOMB,
+    RAID,
+    CHEER,
+    OTHER
+  }
+
+  public enum AlertStyle {
+    NONE,
+    TOAST,
+    TITLE
+  }
+
+  /**
+   * @param message the text after the command, or null.
+   * @return the event, or null if it's not worth showing.
+   */
+  public static TwitchEvent fromUserNotice(String channel, TwitchMessageTags tags, String message) {
+    String msgId = tags.get("msg-id");
+    if (msgId == null) {
+      return null;
+    }
+    String user = tags.getDisplayName() != null ? tags.getDisplayName() : tags.get("login");
+    String systemMessage = tags.get("system-msg");
+    long timestamp = tags.getSentTimestampOrNow();
+    return switch (msgId) {
+      case "sub" -> new TwitchEvent(Type.SUB, timestamp, channel, user, null, 1, message, systemMessage, tags);
+      case "resub" -> new TwitchEvent(Type.RESUB, timestamp, channel, user, null,
+          intParam(tags, "msg-param-cumulative-months", 1), message, systemMessage, tags);
+      case "subgift", "anonsubgift" -> new TwitchEvent(Type.GIFT, timestamp, channel, gifter(msgId, user),
+          tags.get("msg-param-recipient-display-name"), 1, null, systemMessage, tags);
+      case "submysterygift", "anonsubmysterygift" -> new TwitchEvent(Type.GIFT_BOMB, timestamp, channel,
+          gifter(msgId, user), null, intParam(tags, "msg-param-mass-gift-count", 1), null, systemMessage, tags);
+      case "raid" -> new TwitchEvent(Type.RAID, timestamp, channel,
+          tags.get("msg-param-displayName") != null ? tags.get("msg-param-displayName") : user, null,
+          intParam(tags, "msg-param-viewerCount", 0), null, systemMessage, tags);
+      default -> systemMessage != null || message != null
+          ? new TwitchEvent(Type.OTHER, timestamp, channel, user, null, 0, message, systemMessage, tags)
+          : null;
+    };
+  }
+
+  /**
+   * A cheer, without its message, which is shown as a regular chat message.
+   */
+  public static TwitchEvent cheer(String channel, String user, TwitchMessageTags tags) {
+    return new TwitchEvent(Type.CHEER, tags.getSentTimestampOrNow(), channel, user, null, tags.getBits(), null, null,
+        tags);
+  }
+
+  // Anonymous gifts still say who the gifter is, as AnAnonymousGifter.
+  private static String gifter(String msgId, String user) {
+    return msgId.startsWith("anon") ? null : user;
+  }
+
+  private static int intParam(TwitchMessageTags tags, String key, int fallback) {
+    String value = tags.get(key);
+    if (value == null) {
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  /**
+   * Whether this and another gift were both sent by the same chatter in the same channel, and can be shown as one.
+   */
+  public boolean isSameGifter(TwitchEvent other) {
+    return type == Type.GIFT && other.type == Type.GIFT && channel.equals(other.channel)
+        && (user == null ? other.user == null : user.equals(other.user));
+  }
+
+  /**
+   * @return this gift with the subs of another one.
+   */
+  public TwitchEvent plusGift(TwitchEvent other) {
+    return new TwitchEvent(type, timestamp, channel, user, null, count + other.count, message, systemMessage, tags);
+  }
+}
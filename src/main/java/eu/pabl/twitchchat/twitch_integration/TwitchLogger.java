@@ -0,0 +1,132 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import eu.pabl.twitchchat.config.ModConfig;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logging for the Twitch connection. Calls never block the IRC thread: records are handed to a daemon thread that
+ * writes them to the game log, and are dropped if it can't keep up.
+ *
+ * High volume categories (a line per chat message) are created with {@link #sampled}, and only one in every
+ * {@link ModConfig#getLogSampleRate()} of their records is kept.
+ */
+public final class TwitchLogger {
+  public enum Level {
+    OFF, ERROR, WARN, INFO, DEBUG
+  }
+
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final BlockingQueue<LogRecord> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private static final AtomicLong DROPPED = new AtomicLong();
+
+  static {
+    Thread appender = new Thread(TwitchLogger::appendLoop, "Twitch Chat logger");
+    appender.setDaemon(true);
+    appender.setPriority(Thread.MIN_PRIORITY);
+    appender.start();
+  }
+
+  private final Logger logger;
+  private final boolean sampled;
+  private final AtomicLong sampleCounter = new AtomicLong();
+
+  private TwitchLogger(String name, boolean sampled) {
+    this.logger = LoggerFactory.getLogger("twitchchat/" + name);
+    this.sampled = sampled;
+  }
+
+  public static TwitchLogger get(String name) {
+    return new TwitchLogger(name, false);
+  }
+
+  public static TwitchLogger sampled(String name) {
+    return new TwitchLogger(name, true);
+  }
+
+  public boolean isEnabled(Level level) {
+    return level != Level.OFF && level.ordinal() <= ModConfig.getConfig().getLogLevel().ordinal();
+  }
+
+  public void error(String format, Object... args) {
+    log(Level.ERROR, format, args);
+  }
+
+  public void warn(String format, Object... args) {
+    log(Level.WARN, format, args);
+  }
+
+  public void info(String format, Object... args) {
+    log(Level.INFO, format, args);
+  }
+
+  public void debug(String format, Object... args) {
+    log(Level.DEBUG, format, args);
+  }
+
+  /**
+   * Formatting is done on the logger thread with slf4j's "{}" placeholders, so the arguments shouldn't change after
+   * being logged.
+   */
+  public void log(Level level, String format, Object... args) {
+    if (!isEnabled(level)) {
+      return;
+    }
+    if (sampled) {
+      int sampleRate = Math.max(1, ModConfig.getConfig().getLogSampleRate());
+      if (sampleCounter.getAndIncrement() % sampleRate != 0) {
+        return;
+      }
+    }
+    if (!QUEUE.offer(new LogRecord(logger, level, format, args))) {
+      DROPPED.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return how many records were dropped because the logger thread couldn't keep up.
+   */
+  public static long getDroppedCount() {
+    return DROPPED.get();
+  }
+
+  private static void appendLoop() {
+    long reportedDropped = 0;
+    while (true) {
+      LogRecord record;
+      try {
+        record = QUEUE.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      long dropped = DROPPED.get();
+      if (dropped != reportedDropped) {
+        record.logger().warn("{} Twitch log records were dropped", dropped - reportedDropped);
+        reportedDropped = dropped;
+      }
+      try {
+        record.append();
+      } catch (RuntimeException e) {
+        // A broken toString() shouldn't take the logger thread down with it.
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private record LogRecord(Logger logger, Level level, String format, Object[] args) {
+    void append() {
+      switch (level) {
+        case ERROR -> logger.error(format, args);
+        case WARN -> logger.warn(format, args);
+        case INFO -> logger.info(format, args);
+        // Minecraft only writes debug to debug.log, so everything we were asked to log is written as info.
+        case DEBUG -> logger.info("[DEBUG] " + format, args);
+        case OFF -> {
+        }
+      }
+    }
+  }
+}
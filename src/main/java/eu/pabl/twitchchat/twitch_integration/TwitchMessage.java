@@ -0,0 +1,85 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import net.minecraft.text.Text;
+
+/**
+ * A Twitch chat message on its way to the chat HUD, kept as plain values until it's actually shown.
+ * Messages that are dropped from the queue or collapsed into a repeat never get a {@link Text} built for them.
+ */
+public final class TwitchMessage {
+  public static final int FLAG_ME = 1;
+  // It has a highlighted keyword.
+  public static final int FLAG_HIGHLIGHT = 2;
+
+  private final long timestamp;
+  private final String channel;
+  private final String username;
+  private final String message;
+  private final int color;
+  private final int flags;
+  private final String id;
+  private final MessageEmotes emotes;
+  // Built the first time the message is shown, only touched from the client thread.
+  private Text text;
+
+  /**
+   * @param color the username color Twitch sent, or {@link UserColorCache#NO_COLOR}. Resolved when the message is
+   *              shown.
+   * @param id the message's id tag, for clearing it. Can be null.
+   */
+  public TwitchMessage(long timestamp, String channel, String username, String message, int color, int flags,
+                       String id, MessageEmotes emotes) {
+    this.timestamp = timestamp;
+    this.channel = channel;
+    this.username = username;
+    this.message = message;
+    this.color = color;
+    this.flags = flags;
+    this.id = id;
+    this.emotes = emotes;
+  }
+
+  public long timestamp() {
+    return timestamp;
+  }
+
+  public String channel() {
+    return channel;
+  }
+
+  public String username() {
+    return username;
+  }
+
+  public String message() {
+    return message;
+  }
+
+  public int color() {
+    return color;
+  }
+
+  public boolean isMeMessage() {
+    return (flags & FLAG_ME) != 0;
+  }
+
+  public boolean isHighlighted() {
+    return (flags & FLAG_HIGHLIGHT) != 0;
+  }
+
+  public String id() {
+    return id;
+  }
+
+  public MessageEmotes emotes() {
+    return emotes;
+  }
+
+  public Text getText() {
+    return text;
+  }
+
+  public void setText(Text text) {
+    this.text = text;
+  }
+}
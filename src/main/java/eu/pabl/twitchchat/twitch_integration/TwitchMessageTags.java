@@ -0,0 +1,345 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The IRCv3 tags Twitch sends with every message, parsed once into primitive fields.
+ * More at https://dev.twitch.tv/docs/irc/tags/
+ *
+ * Only the tags we use on every message are parsed up front. Everything else can still be read with {@link #get},
+ * which looks it up in the original tags.
+ */
+public final class TwitchMessageTags {
+  public static final int NO_COLOR = UserColorCache.NO_COLOR;
+  public static final long NO_TIMESTAMP = -1;
+
+  public static final int BADGE_BROADCASTER = 1;
+  public static final int BADGE_MODERATOR = 1 << 1;
+  public static final int BADGE_VIP = 1 << 2;
+  public static final int BADGE_SUBSCRIBER = 1 << 3;
+  public static final int BADGE_FOUNDER = 1 << 4;
+  public static final int BADGE_STAFF = 1 << 5;
+  public static final int BADGE_ADMIN = 1 << 6;
+  public static final int BADGE_GLOBAL_MOD = 1 << 7;
+  public static final int BADGE_PARTNER = 1 << 8;
+  public static final int BADGE_TURBO = 1 << 9;
+  public static final int BADGE_PRIME = 1 << 10;
+  public static final int BADGE_BITS = 1 << 11;
+
+  private static final String[] BADGE_NAMES = {
+      "broadcaster", "moderator", "vip", "subscriber", "founder", "staff", "admin", "global_mod", "partner", "turbo",
+      "premium", "bits"
+  };
+
+  public static final TwitchMessageTags EMPTY = of(Map.of());
+
+  private final Map<String, String> tagMap;
+  private final String rawTags;
+  // The tags can be a part of a whole IRC line.
+  private final int rawStart;
+  private final int rawEnd;
+
+  private int color = NO_COLOR;
+  private long sentTimestamp = NO_TIMESTAMP;
+  private int badges;
+  private int bits;
+  private String id;
+  private String displayName;
+  private String userId;
+  private MessageEmotes emotes = MessageEmotes.NONE;
+
+  private TwitchMessageTags(Map<String, String> tagMap, String rawTags, int rawStart, int rawEnd) {
+    this.tagMap = tagMap;
+    this.rawTags = rawTags;
+    this.rawStart = rawStart;
+    this.rawEnd = rawEnd;
+  }
+
+  /**
+   * Builds the tags from a map of already unescaped values, like the ones PircBotX gives us.
+   */
+  public static TwitchMessageTags of(Map<String, String> tags) {
+    TwitchMessageTags parsed = new TwitchMessageTags(tags, null, 0, 0);
+    for (Map.Entry<String, String> tag : tags.entrySet()) {
+      String value = tag.getValue();
+      parsed.parseTag(tag.getKey(), 0, tag.getKey().length(), value, 0, value.length(), false);
+    }
+    return parsed;
+  }
+
+  /**
+   * Parses the raw tags of an IRC line, without the leading '@' and the trailing space
+   * (e.g. "badges=moderator/1;color=#FF0000;tmi-sent-ts=1507246572675").
+   */
+  public static TwitchMessageTags parse(String rawTags) {
+    return parse(rawTags, 0, rawTags.length());
+  }
+
+  /**
+   * Parses the raw tags between two indices of a string, usually the whole IRC line, without copying them out of it.
+   */
+  public static TwitchMessageTags parse(String line, int start, int end) {
+    TwitchMessageTags parsed = new TwitchMessageTags(null, line, start, end);
+    int tagStart = start;
+    while (tagStart < end) {
+      int tagEnd = line.indexOf(';', tagStart);
+      if (tagEnd == -1 || tagEnd > end) {
+        tagEnd = end;
+      }
+      int equals = line.indexOf('=', tagStart);
+      if (equals == -1 || equals > tagEnd) {
+        equals = tagEnd;
+      }
+      int valueStart = Math.min(equals + 1, tagEnd);
+      parsed.parseTag(line, tagStart, equals, line, valueStart, tagEnd, true);
+      tagStart = tagEnd + 1;
+    }
+    return parsed;
+  }
+
+  private void parseTag(String key, int keyStart, int keyEnd, String value, int valueStart, int valueEnd,
+                        boolean escaped) {
+    int keyLength = keyEnd - keyStart;
+    if (keyLength == 0 || valueStart == valueEnd) {
+      return;
+    }
+
+    if (isKey("color", key, keyStart, keyLength)) {
+      color = parseColor(value, valueStart, valueEnd);
+    } else if (isKey("tmi-sent-ts", key, keyStart, keyLength)) {
+      sentTimestamp = parseLong(value, valueStart, valueEnd, NO_TIMESTAMP);
+    } else if (isKey("badges", key, keyStart, keyLength)) {
+      badges = parseBadges(value, valueStart, valueEnd);
+    } else if (isKey("bits", key, keyStart, keyLength)) {
+      bits = (int) parseLong(value, valueStart, valueEnd, 0);
+    } else if (isKey("id", key, keyStart, keyLength)) {
+      id = value.substring(valueStart, valueEnd);
+    } else if (isKey("user-id", key, keyStart, keyLength)) {
+      userId = value.substring(valueStart, valueEnd);
+    } else if (isKey("display-name", key, keyStart, keyLength)) {
+      displayName = escaped ? unescape(value, valueStart, valueEnd) : value.substring(valueStart, valueEnd);
+    } else if (isKey("emotes", key, keyStart, keyLength)) {
+      parseEmotes(value, valueStart, valueEnd);
+    }
+  }
+
+  private static boolean isKey(String expected, String key, int keyStart, int keyLength) {
+    return expected.length() == keyLength && key.regionMatches(keyStart, expected, 0, keyLength);
+  }
+
+  // Colors look like #1E90FF
+  private static int parseColor(String value, int start, int end) {
+    if (end - start != 7 || value.charAt(start) != '#') {
+      return NO_COLOR;
+    }
+    int rgb = 0;
+    for (int i = start + 1; i < end; i++) {
+      int digit = Character.digit(value.charAt(i), 16);
+      if (digit == -1) {
+        return NO_COLOR;
+      }
+      rgb = (rgb << 4) | digit;
+    }
+    return rgb;
+  }
+
+  private static long parseLong(String value, int start, int end, long fallback) {
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return fallback;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  // Badges look like broadcaster/1,subscriber/12
+  private static int parseBadges(String value, int start, int end) {
+    int badges = 0;
+    int badgeStart = start;
+    while (badgeStart < end) {
+      int badgeEnd = value.indexOf(',', badgeStart);
+      if (badgeEnd == -1 || badgeEnd > end) {
+        badgeEnd = end;
+      }
+      int slash = value.indexOf('/', badgeStart);
+      int nameEnd = slash == -1 || slash > badgeEnd ? badgeEnd : slash;
+      for (int i = 0; i < BADGE_NAMES.length; i++) {
+        if (isKey(BADGE_NAMES[i], value, badgeStart, nameEnd - badgeStart)) {
+          badges |= 1 << i;
+          break;
+        }
+      }
+      badgeStart = badgeEnd + 1;
+    }
+    return badges;
+  }
+
+  // Emotes look like 25:0-4,12-16/1902:6-10
+  private void parseEmotes(String value, int start, int end) {
+    int emoteCount = 0;
+    int rangeCount = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c == ':') {
+        emoteCount++;
+        rangeCount++;
+      } else if (c == ',') {
+        rangeCount++;
+      }
+    }
+    if (emoteCount == 0) {
+      return;
+    }
+
+    String[] ids = new String[emoteCount];
+    int[] ranges = new int[rangeCount * 3];
+    int emoteIndex = 0;
+    int rangeIndex = 0;
+    int emoteStart = start;
+    while (emoteStart < end && emoteIndex < emoteCount) {
+      int emoteEnd = value.indexOf('/', emoteStart);
+      if (emoteEnd == -1 || emoteEnd > end) {
+        emoteEnd = end;
+      }
+      int colon = value.indexOf(':', emoteStart);
+      if (colon == -1 || colon > emoteEnd) {
+        break;
+      }
+      ids[emoteIndex] = value.substring(emoteStart, colon);
+
+      int rangeStart = colon + 1;
+      while (rangeStart < emoteEnd) {
+        int rangeEnd = value.indexOf(',', rangeStart);
+        if (rangeEnd == -1 || rangeEnd > emoteEnd) {
+          rangeEnd = emoteEnd;
+        }
+        int dash = value.indexOf('-', rangeStart);
+        if (dash != -1 && dash < rangeEnd) {
+          ranges[rangeIndex++] = (int) parseLong(value, rangeStart, dash, 0);
+          ranges[rangeIndex++] = (int) parseLong(value, dash + 1, rangeEnd, 0);
+          ranges[rangeIndex++] = emoteIndex;
+        }
+        rangeStart = rangeEnd + 1;
+      }
+      emoteIndex++;
+      emoteStart = emoteEnd + 1;
+    }
+
+    // Twitch groups the ranges by emote, sort them by position so they can be walked along the message.
+    for (int i = 3; i < rangeIndex; i += 3) {
+      for (int j = i; j > 0 && ranges[j - 3] > ranges[j]; j -= 3) {
+        for (int k = 0; k < 3; k++) {
+          int swap = ranges[j + k];
+          ranges[j + k] = ranges[j - 3 + k];
+          ranges[j - 3 + k] = swap;
+        }
+      }
+    }
+
+    this.emotes = new MessageEmotes(ids, rangeIndex == ranges.length ? ranges : Arrays.copyOf(ranges, rangeIndex));
+  }
+
+  /**
+   * Undoes the escaping of tag values, see https://ircv3.net/specs/extensions/message-tags.html#escaping-values
+   */
+  static String unescape(String value, int start, int end) {
+    int backslash = value.indexOf('\\', start);
+    if (backslash == -1 || backslash >= end) {
+      return value.substring(start, end);
+    }
+
+    StringBuilder builder = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < end) {
+        char escaped = value.charAt(++i);
+        switch (escaped) {
+          case ':' -> builder.append(';');
+          case 's' -> builder.append(' ');
+          case 'r' -> builder.append('\r');
+          case 'n' -> builder.append('\n');
+          default -> builder.append(escaped);
+        }
+      } else if (c != '\\') {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Looks up any tag, parsed or not.
+   * @return the unescaped value, or null if the tag isn't there or is empty.
+   */
+  public String get(String key) {
+    if (tagMap != null) {
+      String value = tagMap.get(key);
+      return value == null || value.isEmpty() ? null : value;
+    }
+
+    int tagStart = rawStart;
+    while (tagStart < rawEnd) {
+      int tagEnd = rawTags.indexOf(';', tagStart);
+      if (tagEnd == -1 || tagEnd > rawEnd) {
+        tagEnd = rawEnd;
+      }
+      int keyEnd = tagStart + key.length();
+      if (keyEnd < tagEnd && rawTags.charAt(keyEnd) == '=' && rawTags.startsWith(key, tagStart)) {
+        return keyEnd + 1 == tagEnd ? null : unescape(rawTags, keyEnd + 1, tagEnd);
+      }
+      tagStart = tagEnd + 1;
+    }
+    return null;
+  }
+
+  public int getColor() {
+    return color;
+  }
+
+  public boolean hasColor() {
+    return color != NO_COLOR;
+  }
+
+  public long getSentTimestamp() {
+    return sentTimestamp;
+  }
+
+  /**
+   * @return the time at which Twitch received the message, or now if the tag is missing.
+   */
+  public long getSentTimestampOrNow() {
+    return sentTimestamp != NO_TIMESTAMP ? sentTimestamp : System.currentTimeMillis();
+  }
+
+  public int getBadges() {
+    return badges;
+  }
+
+  public boolean hasBadge(int badge) {
+    return (badges & badge) != 0;
+  }
+
+  public int getBits() {
+    return bits;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public MessageEmotes getEmotes() {
+    return emotes;
+  }
+}
@@ -0,0 +1,144 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import eu.pabl.twitchchat.TwitchChatMod;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import net.minecraft.text.Text;
+
+/**
+ * Counters for how the bridge behaves under load, shown by /twitch stats and the stats overlay.
+ * Everything is updated without locks, so it's cheap enough to count every message.
+ */
+public final class TwitchMetrics {
+  private static final LongAdder received = new LongAdder();
+  private static final LongAdder ignored = new LongAdder();
+  private static final LongAdder sampledOut = new LongAdder();
+  private static final LongAdder delivered = new LongAdder();
+  private static final LongAdder collapsed = new LongAdder();
+  private static final LongAdder dropped = new LongAdder();
+  private static final LongAdder sent = new LongAdder();
+  private static final LongAdder sendDropped = new LongAdder();
+  private static final LongAdder reconnects = new LongAdder();
+  private static final LongAdder colorCacheHits = new LongAdder();
+  private static final LongAdder colorCacheMisses = new LongAdder();
+  // From tmi-sent-ts to the chat HUD.
+  private static final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+  // Only touched from the client thread.
+  private static long lastSampleTime;
+  private static long lastSampleReceived;
+  private static volatile double messagesPerSecond;
+
+  private TwitchMetrics() {
+  }
+
+  public static void messageReceived() {
+    received.increment();
+  }
+
+  public static void messageIgnored() {
+    ignored.increment();
+  }
+
+  public static void messageSampledOut() {
+    sampledOut.increment();
+  }
+
+  public static void messageDelivered(long sentTimestamp, long now) {
+    delivered.increment();
+    deliveryLatency.record(now - sentTimestamp);
+  }
+
+  /**
+   * A repeated message that only updated the counter of a line that was already in the chat.
+   */
+  public static void messageCollapsed(long sentTimestamp, long now) {
+    collapsed.increment();
+    deliveryLatency.record(now - sentTimestamp);
+  }
+
+  public static void messageDropped() {
+    dropped.increment();
+  }
+
+  public static void messageSent() {
+    sent.increment();
+  }
+
+  public static void sendDropped() {
+    sendDropped.increment();
+  }
+
+  public static void reconnected() {
+    reconnects.increment();
+  }
+
+  public static void colorCacheHit() {
+    colorCacheHits.increment();
+  }
+
+  public static void colorCacheMiss() {
+    colorCacheMisses.increment();
+  }
+
+  /**
+   * Updates the message rate, at most once a second. Called every client tick.
+   * @return true if the rate was updated.
+   */
+  public static boolean tick(long now) {
+    if (now - lastSampleTime < 1000) {
+      return false;
+    }
+    long receivedNow = received.sum();
+    if (lastSampleTime != 0) {
+      messagesPerSecond = (receivedNow - lastSampleReceived) * 1000.0 / (now - lastSampleTime);
+    }
+    lastSampleTime = now;
+    lastSampleReceived = receivedNow;
+    return true;
+  }
+
+  public static double getMessagesPerSecond() {
+    return messagesPerSecond;
+  }
+
+  public static LatencyHistogram getDeliveryLatency() {
+    return deliveryLatency;
+  }
+
+  public static void reset() {
+    for (LongAdder counter : List.of(received, ignored, sampledOut, delivered, collapsed, dropped, sent, sendDropped, reconnects,
+        colorCacheHits, colorCacheMisses)) {
+      counter.reset();
+    }
+    deliveryLatency.reset();
+    lastSampleReceived = 0;
+    messagesPerSecond = 0;
+  }
+
+  public static List<Text> describe() {
+    List<Text> lines = new ArrayList<>();
+    lines.add(Text.translatable("text.twitchchat.stats.received",
+        received.sum(), String.format("%.1f", messagesPerSecond), ignored.sum(), sampledOut.sum()));
+    lines.add(Text.translatable("text.twitchchat.stats.delivered",
+        delivered.sum(), collapsed.sum(), dropped.sum(), TwitchChatMod.getQueuedMessageCount()));
+    lines.add(Text.translatable("text.twitchchat.stats.latency",
+        deliveryLatency.getPercentile(50), deliveryLatency.getPercentile(99), deliveryLatency.getMax()));
+
+    Bot bot = TwitchChatMod.bot;
+    lines.add(Text.translatable("text.twitchchat.stats.sent",
+        sent.sum(), sendDropped.sum(), bot != null ? bot.getOutboundQueuedCount() : 0, reconnects.sum()));
+
+    long hits = colorCacheHits.sum();
+    long lookups = hits + colorCacheMisses.sum();
+    lines.add(Text.translatable("text.twitchchat.stats.color_cache",
+        bot != null ? bot.getUserColorCache().size() : 0, lookups == 0 ? 0 : hits * 100 / lookups));
+
+    List<String> sampledChannels = bot != null ? bot.getSampledChannels() : List.of();
+    if (!sampledChannels.isEmpty()) {
+      lines.add(Text.translatable("text.twitchchat.stats.sampling", String.join(", ", sampledChannels)));
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,68 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.io.IOException;
+
+/**
+ * The connection to Twitch's IRC server, as far as {@link Bot} needs it. Channels are given without the '#'.
+ */
+public interface TwitchTransport {
+  enum Type {
+    // The PircBotX library.
+    PIRCBOTX,
+    // Our own connection, made for Twitch's IRC only, see NioTransport.
+    NIO
+  }
+
+  /**
+   * Told about everything that comes from the server, from the thread that reads it.
+   */
+  interface Listener {
+    /**
+     * Logged in, ready to join channels.
+     */
+    void onConnect();
+
+    /**
+     * @param cause why the connection was lost, or null if it was closed normally.
+     */
+    void onDisconnect(Exception cause);
+
+    void onJoin(String channel, String user);
+
+    /**
+     * A chat message (PRIVMSG).
+     * @param isAction whether it's a '/me' message.
+     */
+    void onMessage(String channel, String user, String message, TwitchMessageTags tags, boolean isAction);
+
+    /**
+     * Any other command, like USERNOTICE, CLEARCHAT, ROOMSTATE, NOTICE or RECONNECT.
+     * @param channel the target of the command without the '#', or null.
+     * @param parameter the last parameter of the command, or null.
+     */
+    void onCommand(String command, String channel, String parameter, TwitchMessageTags tags);
+  }
+
+  /**
+   * Connects, logs in and reads from the server until the connection is lost or closed.
+   */
+  void connect() throws IOException;
+
+  boolean isConnected();
+
+  void join(String channel);
+
+  void part(String channel);
+
+  void sendMessage(String channel, String message);
+
+  /**
+   * Leaves the server, connect() returns and can be called again.
+   */
+  void disconnect();
+
+  /**
+   * Disconnects for good.
+   */
+  void close();
+}
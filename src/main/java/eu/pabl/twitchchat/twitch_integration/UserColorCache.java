@@ -0,0 +1,85 @@
+package eu.pabl.twitchchat.twitch_integration;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers the color of every chatter, so that users without a color keep the same one during the whole session.
+ *
+ * The cache is bounded (least recently seen chatters are forgotten first) and entries can optionally expire. It is
+ * used from both the IRC thread and the client thread.
+ */
+public class UserColorCache {
+  public static final int NO_COLOR = -1;
+
+  private static class Entry {
+    int rgb;
+    long expiresAt;
+  }
+
+  private final int maxSize;
+  private final long ttlMillis;
+  private final LinkedHashMap<String, Entry> entries;
+
+  /**
+   * @param ttlMillis how long a color is remembered for, or 0 to remember it until it is evicted.
+   */
+  public UserColorCache(int maxSize, long ttlMillis) {
+    this.maxSize = Math.max(maxSize, 1);
+    this.ttlMillis = ttlMillis;
+    // Access order turns the LinkedHashMap into an LRU list.
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > UserColorCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the color for a chatter with a single lookup.
+   * @param tagColor the color Twitch sent along with the message, or {@link #NO_COLOR} if the chatter hasn't picked
+   * one. A tag color always wins over the cached one, so color changes are picked up straight away.
+   * @return the color as a packed RGB int.
+   */
+  public synchronized int resolve(String nick, int tagColor) {
+    String key = nick.toLowerCase(Locale.ROOT);
+    long now = ttlMillis > 0 ? System.currentTimeMillis() : 0;
+    Entry entry = entries.get(key);
+
+    if (entry != null) {
+      boolean expired = ttlMillis > 0 && now >= entry.expiresAt;
+      if (tagColor == NO_COLOR && !expired) {
+        TwitchMetrics.colorCacheHit();
+        return entry.rgb;
+      }
+    } else {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+
+    if (tagColor == NO_COLOR) {
+      // Only chatters without a color of their own need the cache.
+      TwitchMetrics.colorCacheMiss();
+    }
+    entry.rgb = tagColor != NO_COLOR ? tagColor : CalculateMinecraftColor.getDefaultUserRgb(key);
+    entry.expiresAt = now + ttlMillis;
+    return entry.rgb;
+  }
+
+  public synchronized void put(String nick, int rgb) {
+    Entry entry = new Entry();
+    entry.rgb = rgb;
+    entry.expiresAt = (ttlMillis > 0 ? System.currentTimeMillis() : 0) + ttlMillis;
+    entries.put(nick.toLowerCase(Locale.ROOT), entry);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+}
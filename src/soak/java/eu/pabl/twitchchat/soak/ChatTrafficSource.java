@@ -0,0 +1,144 @@
+package eu.pabl.twitchchat.soak;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Chat traffic for the {@link FakeTwitchServer}, either made up or replayed from a recorded chat log.
+ */
+public abstract class ChatTrafficSource {
+  private double messagesOwed;
+  private long lastTick = -1;
+
+  /**
+   * @return how many messages each channel should get for the time since the last tick.
+   */
+  public int tick(long now) {
+    if (lastTick == -1) {
+      lastTick = now;
+    }
+    messagesOwed += (now - lastTick) * rateAt(now) / 1000.0;
+    lastTick = now;
+
+    int due = (int) messagesOwed;
+    messagesOwed -= due;
+    return due;
+  }
+
+  /**
+   * @return messages per second per channel.
+   */
+  protected abstract double rateAt(long now);
+
+  public abstract void emit(String channel, int count, long now, Consumer<String> out);
+
+  /**
+   * Made up chat with a pool of chatters. Includes /me messages, emotes, badges, timeouts and notices, and optionally
+   * periodic bursts to simulate raids.
+   */
+  public static ChatTrafficSource synthetic(double rate, double burstRate, int burstEverySeconds, int burstSeconds,
+                                            int chatters) {
+    return new ChatTrafficSource() {
+      private final Random random = new Random(42);
+      private final long startTime = System.currentTimeMillis();
+      private final String[] words = {"Kappa", "PogChamp", "LUL", "gg", "nice", "what", "is", "that", "build",
+          "creeper", "diamonds", "lol", "no", "way", "monkaS", "the", "chat", "hello", "hype", "!"};
+      private long messageId;
+
+      @Override
+      protected double rateAt(long now) {
+        if (burstRate > 0 && burstEverySeconds > 0) {
+          long secondsIn = (now - startTime) / 1000 % burstEverySeconds;
+          if (secondsIn >= burstEverySeconds - burstSeconds) {
+            return burstRate;
+          }
+        }
+        return rate;
+      }
+
+      @Override
+      public void emit(String channel, int count, long now, Consumer<String> out) {
+        for (int i = 0; i < count; i++) {
+          int chatter = random.nextInt(chatters);
+          String nick = "chatter_" + chatter;
+          int roll = random.nextInt(1000);
+
+          if (roll == 0) {
+            out.accept("@msg-id=msg_ratelimit :tmi.twitch.tv NOTICE " + channel
+                + " :Your message was not sent because you are sending messages too quickly.");
+          } else if (roll < 3) {
+            out.accept("@ban-duration=600;room-id=1;target-user-id=" + (chatter + 1000) + ";tmi-sent-ts=" + now
+                + " :tmi.twitch.tv CLEARCHAT " + channel + " :" + nick);
+          } else {
+            StringBuilder message = new StringBuilder();
+            int wordCount = 1 + random.nextInt(12);
+            for (int w = 0; w < wordCount; w++) {
+              if (w > 0) {
+                message.append(' ');
+              }
+              message.append(words[random.nextInt(words.length)]);
+            }
+            boolean startsWithKappa = message.indexOf("Kappa") == 0;
+            if (roll < 30) {
+              message.insert(0, "\u0001ACTION ").append('\u0001');
+            }
+
+            String color = chatter % 4 == 0 ? "" : String.format("#%06X", (chatter * 0x9E3779) & 0xFFFFFF);
+            String badges = chatter % 50 == 0 ? "moderator/1" : chatter % 5 == 0 ? "subscriber/6" : "";
+            out.accept("@badge-info=;badges=" + badges + ";color=" + color + ";display-name=" + nick
+                + ";emotes=" + (startsWithKappa && roll >= 30 ? "25:0-4" : "") + ";first-msg=0;flags=;id=soak-"
+                + (messageId++) + ";mod=" + (badges.startsWith("moderator") ? 1 : 0) + ";room-id=1;subscriber="
+                + (badges.startsWith("subscriber") ? 1 : 0) + ";tmi-sent-ts=" + now + ";turbo=0;user-id="
+                + (chatter + 1000) + ";user-type= :" + nick + "!" + nick + "@" + nick + ".tmi.twitch.tv PRIVMSG "
+                + channel + " :" + message);
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Replays a chat log of raw IRC lines (as received from Twitch) in a loop, at a fixed rate. The channel and
+   * tmi-sent-ts of every line are rewritten, so any log can be replayed into any channel.
+   */
+  public static ChatTrafficSource replay(Path chatLog, double rate) throws IOException {
+    List<String> lines = Files.readAllLines(chatLog, StandardCharsets.UTF_8).stream()
+        .filter(line -> !line.isBlank() && !line.startsWith("#"))
+        .toList();
+    if (lines.isEmpty()) {
+      throw new IOException(chatLog + " has no lines to replay");
+    }
+    Pattern channelPattern = Pattern.compile("^((?:@\\S+ )?(?::\\S+ )?[A-Z]+ )#\\w+");
+    Pattern timestampPattern = Pattern.compile("tmi-sent-ts=\\d+");
+
+    return new ChatTrafficSource() {
+      private int next;
+
+      @Override
+      protected double rateAt(long now) {
+        return rate;
+      }
+
+      @Override
+      public void emit(String channel, int count, long now, Consumer<String> out) {
+        for (int i = 0; i < count; i++) {
+          String line = lines.get(next);
+          next = (next + 1) % lines.size();
+
+          Matcher channelMatcher = channelPattern.matcher(line);
+          if (channelMatcher.find()) {
+            line = channelMatcher.group(1) + channel + line.substring(channelMatcher.end());
+          }
+          out.accept(timestampPattern.matcher(line).replaceFirst("tmi-sent-ts=" + now));
+        }
+      }
+    };
+  }
+}
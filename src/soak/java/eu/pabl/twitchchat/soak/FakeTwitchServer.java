@@ -0,0 +1,248 @@
+package eu.pabl.twitchchat.soak;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for irc.chat.twitch.tv, used to soak test the mod without touching Twitch.
+ *
+ * It speaks enough of Twitch's IRC dialect for the bot: the twitch.tv/tags, twitch.tv/membership and
+ * twitch.tv/commands capabilities, JOIN/PART, PING/PONG (clients that don't answer are dropped, like Twitch does),
+ * USERSTATE, ROOMSTATE, NOTICE and CLEARCHAT. Every joined channel gets chat traffic from a {@link ChatTrafficSource}.
+ *
+ * Point the mod at it by setting "serverHost" to "localhost", "serverPort" to the port and "serverTls" to false in
+ * twitchchat.json, then run it with `./gradlew runFakeTwitchServer -PsoakArgs="--rate 200"`.
+ */
+public class FakeTwitchServer {
+  private static final String HOST = "tmi.twitch.tv";
+
+  private final int port;
+  private final ChatTrafficSource trafficSource;
+  private final List<Client> clients = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+  private final AtomicLong sentLines = new AtomicLong();
+
+  public FakeTwitchServer(int port, ChatTrafficSource trafficSource) {
+    this.port = port;
+    this.trafficSource = trafficSource;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = 6667;
+    double rate = 20;
+    double burstRate = 0;
+    int burstEverySeconds = 60;
+    int burstSeconds = 10;
+    int chatters = 5000;
+    Path replay = null;
+
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--port" -> port = Integer.parseInt(args[++i]);
+        case "--rate" -> rate = Double.parseDouble(args[++i]);
+        case "--burst-rate" -> burstRate = Double.parseDouble(args[++i]);
+        case "--burst-every" -> burstEverySeconds = Integer.parseInt(args[++i]);
+        case "--burst-seconds" -> burstSeconds = Integer.parseInt(args[++i]);
+        case "--chatters" -> chatters = Integer.parseInt(args[++i]);
+        case "--replay" -> replay = Path.of(args[++i]);
+        default -> {
+          System.err.println("Unknown argument " + args[i]);
+          System.err.println("Usage: FakeTwitchServer [--port 6667] [--rate 20] [--burst-rate 0] [--burst-every 60] "
+              + "[--burst-seconds 10] [--chatters 5000] [--replay chat.log]");
+          System.exit(1);
+        }
+      }
+    }
+
+    ChatTrafficSource trafficSource = replay != null
+        ? ChatTrafficSource.replay(replay, rate)
+        : ChatTrafficSource.synthetic(rate, burstRate, burstEverySeconds, burstSeconds, chatters);
+    new FakeTwitchServer(port, trafficSource).run();
+  }
+
+  public void run() throws IOException {
+    // Chat traffic, sent in small batches every 10ms.
+    scheduler.scheduleAtFixedRate(() -> {
+      try {
+        long now = System.currentTimeMillis();
+        int due = trafficSource.tick(now);
+        if (due == 0) {
+          return;
+        }
+        for (Client client : clients) {
+          for (String channel : client.channels) {
+            trafficSource.emit(channel, due, now, client::send);
+          }
+          client.flush();
+        }
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }, 10, 10, TimeUnit.MILLISECONDS);
+
+    // Twitch pings every few minutes and drops clients that don't answer, we do it more often.
+    scheduler.scheduleAtFixedRate(() -> {
+      long now = System.currentTimeMillis();
+      for (Client client : clients) {
+        if (client.lastPingSent > client.lastPongReceived && now - client.lastPingSent > 10_000) {
+          System.out.println("Dropping " + client.nick + ", it didn't answer our PING");
+          client.close();
+          continue;
+        }
+        client.lastPingSent = now;
+        client.send("PING :" + HOST);
+        client.flush();
+      }
+    }, 30, 30, TimeUnit.SECONDS);
+
+    scheduler.scheduleAtFixedRate(() -> System.out.printf("%d clients, %d lines sent%n", clients.size(),
+        sentLines.get()), 10, 10, TimeUnit.SECONDS);
+
+    try (ServerSocket serverSocket = new ServerSocket(port)) {
+      System.out.println("Fake Twitch IRC server listening on port " + port);
+      while (true) {
+        Socket socket = serverSocket.accept();
+        Client client = new Client(socket);
+        clients.add(client);
+        Thread thread = new Thread(client::readLoop, "fake-twitch-client-" + socket.getPort());
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+  }
+
+  private class Client {
+    private final Socket socket;
+    private final BufferedWriter writer;
+    final Set<String> channels = ConcurrentHashMap.newKeySet();
+    volatile String nick = "justinfan";
+    volatile long lastPingSent;
+    volatile long lastPongReceived;
+
+    Client(Socket socket) throws IOException {
+      this.socket = socket;
+      this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 65536);
+    }
+
+    void readLoop() {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          handle(line);
+          flush();
+        }
+      } catch (SocketException e) {
+        // Closed
+      } catch (IOException e) {
+        e.printStackTrace();
+      } finally {
+        close();
+      }
+    }
+
+    private void handle(String line) {
+      String[] parts = line.split(" ", 3);
+      switch (parts[0].toUpperCase()) {
+        case "CAP" -> {
+          if (parts.length > 1 && parts[1].equals("LS")) {
+            send(":" + HOST + " CAP * LS :twitch.tv/membership twitch.tv/tags twitch.tv/commands");
+          } else if (parts.length > 2 && parts[1].equals("REQ")) {
+            send(":" + HOST + " CAP * ACK " + parts[2]);
+          }
+        }
+        case "PASS", "USER" -> {
+          // Any password is fine.
+        }
+        case "NICK" -> {
+          nick = parts[1].toLowerCase();
+          send(":" + HOST + " 001 " + nick + " :Welcome, GLHF!");
+          send(":" + HOST + " 002 " + nick + " :Your host is " + HOST);
+          send(":" + HOST + " 003 " + nick + " :This server is rather new");
+          send(":" + HOST + " 004 " + nick + " :-");
+          send(":" + HOST + " 375 " + nick + " :-");
+          send(":" + HOST + " 372 " + nick + " :You are in a maze of twisty passages, all alike.");
+          send(":" + HOST + " 376 " + nick + " :>");
+          send("@badge-info=;badges=;color=#8A2BE2;display-name=" + nick + ";emote-sets=0;user-id=1;user-type= :"
+              + HOST + " GLOBALUSERSTATE");
+        }
+        case "JOIN" -> {
+          for (String channel : parts[1].split(",")) {
+            channels.add(channel);
+            send(":" + nick + "!" + nick + "@" + nick + "." + HOST + " JOIN " + channel);
+            send(":" + nick + "." + HOST + " 353 " + nick + " = " + channel + " :" + nick);
+            send(":" + nick + "." + HOST + " 366 " + nick + " " + channel + " :End of /NAMES list");
+            sendUserState(channel);
+            send("@emote-only=0;followers-only=-1;r9k=0;room-id=1;slow=0;subs-only=0 :" + HOST + " ROOMSTATE " + channel);
+          }
+        }
+        case "PART" -> {
+          for (String channel : parts[1].split(",")) {
+            channels.remove(channel);
+            send(":" + nick + "!" + nick + "@" + nick + "." + HOST + " PART " + channel);
+          }
+        }
+        case "PRIVMSG" -> {
+          // Twitch answers every message we send with our USERSTATE.
+          if (parts.length > 1) {
+            sendUserState(parts[1]);
+          }
+        }
+        case "PING" -> send(":" + HOST + " PONG " + HOST + " " + (parts.length > 1 ? parts[1] : ":" + HOST));
+        case "PONG" -> lastPongReceived = System.currentTimeMillis();
+        default -> send(":" + HOST + " 421 " + nick + " " + parts[0] + " :Unknown command");
+      }
+    }
+
+    private void sendUserState(String channel) {
+      send("@badge-info=;badges=;color=#8A2BE2;display-name=" + nick + ";emote-sets=0;mod=0;subscriber=0;user-type= :"
+          + HOST + " USERSTATE " + channel);
+    }
+
+    void send(String line) {
+      synchronized (writer) {
+        try {
+          writer.write(line);
+          writer.write("\r\n");
+          sentLines.incrementAndGet();
+        } catch (IOException e) {
+          close();
+        }
+      }
+    }
+
+    void flush() {
+      synchronized (writer) {
+        try {
+          writer.flush();
+        } catch (IOException e) {
+          close();
+        }
+      }
+    }
+
+    void close() {
+      clients.remove(this);
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed
+      }
+    }
+  }
+}